@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression used for build cache entries.
+ *
+ * Each codec is identified by the signature at the start of its stream, so entries written with any codec can be unpacked regardless of the codec used for packing.
+ */
+public enum BuildCacheEntryCodec {
+    /**
+     * Gzip at the default compression level, the format used by all Gradle versions.
+     */
+    GZIP {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input);
+        }
+
+        @Override
+        boolean matches(byte[] signature, int length) {
+            return length >= 2
+                && signature[0] == (byte) GZIPInputStream.GZIP_MAGIC
+                && signature[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+        }
+    },
+
+    /**
+     * The LZ4 frame format, tuned for speed over compression ratio.
+     */
+    LZ4 {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new FramedLZ4CompressorOutputStream(output, new FramedLZ4CompressorOutputStream.Parameters(
+                FramedLZ4CompressorOutputStream.BlockSize.M4,
+                true,
+                false,
+                false,
+                BlockLZ4CompressorOutputStream.createParameterBuilder().tunedForSpeed().build()
+            ));
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new FramedLZ4CompressorInputStream(input);
+        }
+
+        @Override
+        boolean matches(byte[] signature, int length) {
+            return FramedLZ4CompressorInputStream.matches(signature, length);
+        }
+    };
+
+    public static final String SYSTEM_PROPERTY = "org.gradle.caching.entry-codec";
+
+    /**
+     * The number of bytes needed to detect the codec of an entry.
+     */
+    public static final int SIGNATURE_LENGTH = 4;
+
+    public abstract OutputStream compress(OutputStream output) throws IOException;
+
+    public abstract InputStream decompress(InputStream input) throws IOException;
+
+    abstract boolean matches(byte[] signature, int length);
+
+    /**
+     * Returns the codec to use for packing new entries, which is {@link #GZIP} unless configured otherwise via the {@value #SYSTEM_PROPERTY} system property.
+     */
+    public static BuildCacheEntryCodec fromSystemProperty() {
+        String value = System.getProperty(SYSTEM_PROPERTY);
+        if (value == null) {
+            return GZIP;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown build cache entry codec '%s' for system property '%s'.", value, SYSTEM_PROPERTY), e);
+        }
+    }
+
+    /**
+     * Returns the codec an entry starting with the given signature was written with.
+     *
+     * @throws IOException if the signature does not belong to any codec.
+     */
+    public static BuildCacheEntryCodec detect(byte[] signature, int length) throws IOException {
+        for (BuildCacheEntryCodec codec : values()) {
+            if (codec.matches(signature, length)) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown build cache entry format.");
+    }
+}
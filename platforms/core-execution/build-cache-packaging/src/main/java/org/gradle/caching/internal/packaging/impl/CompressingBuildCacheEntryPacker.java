@@ -16,37 +16,49 @@
 
 package org.gradle.caching.internal.packaging.impl;
 
+import org.apache.commons.io.IOUtils;
 import org.gradle.caching.internal.CacheableEntity;
 import org.gradle.caching.internal.origin.OriginReader;
 import org.gradle.caching.internal.origin.OriginWriter;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
-public class GZipBuildCacheEntryPacker implements BuildCacheEntryPacker {
+/**
+ * Compresses entries with the configured {@link BuildCacheEntryCodec}.
+ *
+ * Unpacking detects the codec from the entry itself, so a cache can contain entries packed with different codecs.
+ */
+public class CompressingBuildCacheEntryPacker implements BuildCacheEntryPacker {
     private final BuildCacheEntryPacker delegate;
+    private final BuildCacheEntryCodec codec;
 
-    public GZipBuildCacheEntryPacker(BuildCacheEntryPacker delegate) {
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate, BuildCacheEntryCodec codec) {
         this.delegate = delegate;
+        this.codec = codec;
     }
 
     @Override
     public PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
-        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
-            return delegate.pack(entity, snapshots, gzipOutput, writeOrigin);
+        try (OutputStream compressedOutput = codec.compress(output)) {
+            return delegate.pack(entity, snapshots, compressedOutput, writeOrigin);
         }
     }
 
     @Override
     public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
-        try (GZIPInputStream gzipInput = new GZIPInputStream(input)) {
-            return delegate.unpack(entity, gzipInput, readOrigin);
+        BufferedInputStream bufferedInput = new BufferedInputStream(input);
+        bufferedInput.mark(BuildCacheEntryCodec.SIGNATURE_LENGTH);
+        byte[] signature = new byte[BuildCacheEntryCodec.SIGNATURE_LENGTH];
+        int signatureLength = IOUtils.read(bufferedInput, signature);
+        bufferedInput.reset();
+        try (InputStream decompressedInput = BuildCacheEntryCodec.detect(signature, signatureLength).decompress(bufferedInput)) {
+            return delegate.unpack(entity, decompressedInput, readOrigin);
         }
     }
 }
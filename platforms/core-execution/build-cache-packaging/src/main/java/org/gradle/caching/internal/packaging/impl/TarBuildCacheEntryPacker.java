@@ -17,6 +17,7 @@
 package org.gradle.caching.internal.packaging.impl;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Interner;
 import com.google.common.io.CountingOutputStream;
@@ -53,6 +54,7 @@
 
 import javax.annotation.Nullable;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -66,9 +68,16 @@
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -93,11 +102,24 @@ private interface UnixPermissions {
     private static final String METADATA_PATH = "METADATA";
     private static final Pattern TREE_PATH = Pattern.compile("(missing-)?tree-([^/]+)(?:/(.*))?");
 
+    /**
+     * Files up to this size are read into memory and written by the unpack executor, larger files are written while reading the entry.
+     */
+    private static final int MAX_BUFFERED_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * Limits the memory used by file contents waiting to be written by the unpack executor.
+     */
+    private static final int MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+
     private final TarPackerFileSystemSupport fileSystemSupport;
     private final FilePermissionAccess filePermissionAccess;
     private final StreamHasher streamHasher;
     private final Interner<String> stringInterner;
     private final BufferProvider bufferProvider;
+    @Nullable
+    private final Executor unpackExecutor;
+    private final Semaphore bufferedBytes = new Semaphore(MAX_BUFFERED_BYTES);
 
     public TarBuildCacheEntryPacker(
         TarPackerFileSystemSupport fileSystemSupport,
@@ -105,12 +127,29 @@ public TarBuildCacheEntryPacker(
         StreamHasher streamHasher,
         Interner<String> stringInterner,
         BufferProvider bufferProvider
+    ) {
+        this(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, bufferProvider, null);
+    }
+
+    /**
+     * Creates a packer which writes and hashes the files of unpacked directory trees on the given executor.
+     *
+     * The entry is still read and decompressed sequentially, and the resulting snapshots are the same as when unpacking sequentially.
+     */
+    public TarBuildCacheEntryPacker(
+        TarPackerFileSystemSupport fileSystemSupport,
+        FilePermissionAccess filePermissionAccess,
+        StreamHasher streamHasher,
+        Interner<String> stringInterner,
+        BufferProvider bufferProvider,
+        @Nullable Executor unpackExecutor
     ) {
         this.fileSystemSupport = fileSystemSupport;
         this.filePermissionAccess = filePermissionAccess;
         this.streamHasher = streamHasher;
         this.stringInterner = stringInterner;
         this.bufferProvider = bufferProvider;
+        this.unpackExecutor = unpackExecutor;
     }
 
     @Override
@@ -266,7 +305,7 @@ private TarArchiveEntry unpackTree(String treeName, TreeType treeType, File tree
         return unpackDirectoryTree(input, rootEntry, snapshots, entries, treeRoot, treeName);
     }
 
-    private RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
+    private RegularFileSnapshot unpackFile(InputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
         try (CountingOutputStream output = new CountingOutputStream(new FileOutputStream(file))) {
             HashCode hash = streamHasher.hashCopy(input, output);
             chmodUnpackedFile(entry, file);
@@ -278,6 +317,9 @@ private RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEn
 
     @Nullable
     private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArchiveEntry rootEntry, Map<String, FileSystemLocationSnapshot> snapshots, AtomicLong entries, File treeRoot, String treeName) throws IOException {
+        if (unpackExecutor != null) {
+            return unpackDirectoryTreeInParallel(unpackExecutor, input, rootEntry, snapshots, entries, treeRoot, treeName);
+        }
         RelativePathParser parser = new RelativePathParser(safeEntryName(rootEntry));
 
         DirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
@@ -313,6 +355,113 @@ private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArch
         return entry;
     }
 
+    /**
+     * Unpacks a directory tree like {@link #unpackDirectoryTree(TarArchiveInputStream, TarArchiveEntry, Map, AtomicLong, File, String)},
+     * but writes and hashes small files on the executor.
+     *
+     * Directories are created while reading the entry, so they exist before their files are written.
+     * The operations on the snapshot builder are recorded in the order of the entry and applied once all files have been written.
+     */
+    @Nullable
+    private TarArchiveEntry unpackDirectoryTreeInParallel(Executor executor, TarArchiveInputStream input, TarArchiveEntry rootEntry, Map<String, FileSystemLocationSnapshot> snapshots, AtomicLong entries, File treeRoot, String treeName) throws IOException {
+        RelativePathParser parser = new RelativePathParser(safeEntryName(rootEntry));
+
+        List<Consumer<DirectorySnapshotBuilder>> builderOperations = new ArrayList<>();
+        List<CompletableFuture<RegularFileSnapshot>> pendingFiles = new ArrayList<>();
+        Runnable leaveDirectory = () -> builderOperations.add(DirectorySnapshotBuilder::leaveDirectory);
+
+        TarArchiveEntry entry;
+        try {
+            while ((entry = input.getNextTarEntry()) != null) {
+                boolean isDir = entry.isDirectory();
+                boolean outsideOfRoot = parser.nextPath(safeEntryName(entry), isDir, leaveDirectory);
+                if (outsideOfRoot) {
+                    break;
+                }
+                entries.incrementAndGet();
+
+                File file = new File(treeRoot, parser.getRelativePath());
+                String name = parser.getName();
+                if (isDir) {
+                    FileUtils.forceMkdir(file);
+                    chmodUnpackedFile(entry, file);
+                    String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
+                    String internedName = stringInterner.intern(name);
+                    builderOperations.add(builder -> builder.enterDirectory(DIRECT, internedAbsolutePath, internedName, INCLUDE_EMPTY_DIRS));
+                } else if (entry.getSize() > MAX_BUFFERED_FILE_SIZE) {
+                    RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, name);
+                    builderOperations.add(builder -> builder.visitLeafElement(fileSnapshot));
+                } else {
+                    CompletableFuture<RegularFileSnapshot> pendingFile = writeBufferedFile(executor, IOUtils.toByteArray(input, entry.getSize()), entry, file, name);
+                    pendingFiles.add(pendingFile);
+                    builderOperations.add(builder -> builder.visitLeafElement(pendingFile.join()));
+                }
+            }
+        } catch (Throwable t) {
+            // Don't leave files being written behind
+            awaitQuietly(pendingFiles);
+            throw t;
+        }
+        parser.exitToRoot(leaveDirectory);
+        awaitAll(pendingFiles);
+
+        DirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        builder.enterDirectory(DIRECT, stringInterner.intern(treeRoot.getAbsolutePath()), stringInterner.intern(treeRoot.getName()), INCLUDE_EMPTY_DIRS);
+        builderOperations.forEach(operation -> operation.accept(builder));
+        builder.leaveDirectory();
+
+        snapshots.put(treeName, builder.getResult());
+        return entry;
+    }
+
+    private CompletableFuture<RegularFileSnapshot> writeBufferedFile(Executor executor, byte[] content, TarArchiveEntry entry, File file, String fileName) {
+        bufferedBytes.acquireUninterruptibly(content.length);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return unpackFile(new ByteArrayInputStream(content), entry, file, fileName);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    bufferedBytes.release(content.length);
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            bufferedBytes.release(content.length);
+            throw e;
+        }
+    }
+
+    private static void awaitAll(List<? extends CompletableFuture<?>> futures) throws IOException {
+        Throwable failure = null;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) failure).getCause();
+        }
+        if (failure != null) {
+            Throwables.throwIfUnchecked(failure);
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static void awaitQuietly(List<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException ignored) {
+                // The failure of reading the entry is reported instead
+            }
+        }
+    }
+
     /**
      * Returns a safe name for the name of a tar archive entry.
      *
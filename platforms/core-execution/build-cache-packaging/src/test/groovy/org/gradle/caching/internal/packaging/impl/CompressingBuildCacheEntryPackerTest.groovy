@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import spock.lang.Specification
+
+class CompressingBuildCacheEntryPackerTest extends Specification {
+    def entity = Mock(CacheableEntity)
+    def writeOrigin = Mock(OriginWriter)
+    def readOrigin = Mock(OriginReader)
+    def content = ("cached output " * 1000).bytes
+
+    def "can unpack entries packed with #packedWith when packing with #packingWith"() {
+        def output = new ByteArrayOutputStream()
+        byte[] unpacked = null
+        def delegate = Stub(BuildCacheEntryPacker) {
+            pack(_, _, _, _) >> { CacheableEntity entity, Map snapshots, OutputStream stream, OriginWriter origin ->
+                stream.write(content)
+                new BuildCacheEntryPacker.PackResult(1)
+            }
+            unpack(_, _, _) >> { CacheableEntity entity, InputStream stream, OriginReader origin ->
+                unpacked = stream.bytes
+                new BuildCacheEntryPacker.UnpackResult(null, 1, [:])
+            }
+        }
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, packedWith).pack(entity, [:], output, writeOrigin)
+        then:
+        output.size() < content.length
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, packingWith).unpack(entity, new ByteArrayInputStream(output.toByteArray()), readOrigin)
+        then:
+        unpacked == content
+
+        where:
+        [packedWith, packingWith] << [BuildCacheEntryCodec.values(), BuildCacheEntryCodec.values()].combinations()
+    }
+
+    def "fails to unpack entries in unknown format"() {
+        def packer = new CompressingBuildCacheEntryPacker(Stub(BuildCacheEntryPacker), BuildCacheEntryCodec.GZIP)
+
+        when:
+        packer.unpack(entity, new ByteArrayInputStream(content), readOrigin)
+        then:
+        def e = thrown(IOException)
+        e.message == "Unknown build cache entry format."
+    }
+}
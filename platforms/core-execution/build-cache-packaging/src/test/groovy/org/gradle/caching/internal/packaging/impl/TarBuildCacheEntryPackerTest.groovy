@@ -19,11 +19,14 @@ package org.gradle.caching.internal.packaging.impl
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
 import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.file.BufferProvider
 import org.gradle.internal.file.Deleter
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.test.precondition.Requires
 import org.gradle.test.preconditions.UnitTestPreconditions
 
+import java.util.concurrent.Executors
+
 import static org.gradle.internal.file.TreeType.DIRECTORY
 import static org.gradle.internal.file.TreeType.FILE
 
@@ -65,6 +68,38 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
         result.entries == 4
     }
 
+    def "unpacks directory with writer pool to the same snapshot as sequentially"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        20.times { dirIndex ->
+            def dir = sourceOutputDir.file("dir-$dirIndex").createDir()
+            dir.file("nested").createDir().file("nested.txt") << "nested $dirIndex"
+            50.times { fileIndex ->
+                dir.file("file-${fileIndex}.txt") << "content $dirIndex $fileIndex"
+            }
+        }
+        sourceOutputDir.file("empty").createDir()
+        def output = new ByteArrayOutputStream()
+        pack output, prop(DIRECTORY, sourceOutputDir)
+        def writerPool = Executors.newFixedThreadPool(4)
+        def parallelPacker = new TarBuildCacheEntryPacker(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, Stub(BufferProvider) {
+            getBuffer() >> new byte[4096]
+        }, writerPool)
+
+        when:
+        def sequentialResult = unpack new ByteArrayInputStream(output.toByteArray()), prop(DIRECTORY, temporaryFolder.file("sequential"))
+        def parallelTarget = temporaryFolder.file("parallel")
+        def parallelResult = parallelPacker.unpack(entity(prop(DIRECTORY, parallelTarget)), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        parallelResult.entries == sequentialResult.entries
+        parallelResult.snapshots["test"].hash == sequentialResult.snapshots["test"].hash
+        parallelResult.snapshots["test"].hash == fileSystemAccess.read(parallelTarget.absolutePath).hash
+        parallelTarget.file("dir-7/file-42.txt").text == "content 7 42"
+
+        cleanup:
+        writerPool.shutdownNow()
+    }
+
     def "can pack tree with missing #type (pre-existing as: #preExistsAs)"() {
         def sourceOutput = temporaryFolder.file("source")
         def targetOutput = temporaryFolder.file("target")
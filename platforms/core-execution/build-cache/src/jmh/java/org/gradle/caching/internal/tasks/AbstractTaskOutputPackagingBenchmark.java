@@ -35,6 +35,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.zip.Deflater;
 
 @Fork(1)
 @Warmup(iterations = 3)
@@ -55,6 +56,8 @@ public abstract class AbstractTaskOutputPackagingBenchmark {
         .put("tar.small", new CommonsTarPacker(2))
         .put("tar.large", new CommonsTarPacker(64))
         .put("tar.gz", new GzipPacker(new CommonsTarPacker(4)))
+        .put("tar.gz.fast", new GzipPacker(new CommonsTarPacker(4), Deflater.BEST_SPEED))
+        .put("tar.lz4", new Lz4Packer(new CommonsTarPacker(4)))
         .put("zip", new ZipPacker(4))
         .build();
 
@@ -77,15 +80,23 @@ public abstract class AbstractTaskOutputPackagingBenchmark {
 
     protected abstract String getAccessorName();
 
+    /**
+     * The kind of file contents to pack, either {@code random} or {@code compressible}.
+     */
+    protected String getDataName() {
+        return "random";
+    }
+
     @Setup(Level.Trial)
     public void setupTrial() throws IOException {
         DIRECTORY_PROVIDER.setupTrial();
         String packerName = getPackerName();
         String accessorName = getAccessorName();
-        System.out.println(">>> Measuring format: " + packerName + " with accessor " + accessorName);
+        String dataName = getDataName();
+        System.out.println(">>> Measuring format: " + packerName + " with accessor " + accessorName + " and " + dataName + " data");
         Packer packer = PACKERS.get(packerName);
         DataAccessor accessor = ACCESSORS.get(accessorName);
-        this.inputs = createInputFiles(fileCount, minFileSize, maxFileSize, accessor);
+        this.inputs = createInputFiles(fileCount, minFileSize, maxFileSize, dataName, accessor);
         this.sample = packSample("sample." + packerName, inputs, packer, accessor);
     }
 
@@ -104,20 +115,52 @@ public void tearDownIteration() throws IOException {
         DIRECTORY_PROVIDER.tearDownIteration();
     }
 
-    private static ImmutableList<DataSource> createInputFiles(int fileCount, int minFileSize, int maxFileSize, DataAccessor accessor) throws IOException {
+    private static ImmutableList<DataSource> createInputFiles(int fileCount, int minFileSize, int maxFileSize, String dataName, DataAccessor accessor) throws IOException {
         Random random = new Random(1234L);
         ImmutableList.Builder<DataSource> inputs = ImmutableList.builder();
         for (int idx = 0; idx < fileCount; idx++) {
             String name = "input-" + idx + ".bin";
             int fileSize = minFileSize + random.nextInt(maxFileSize - minFileSize);
             byte[] buffer = new byte[fileSize];
-            random.nextBytes(buffer);
+            switch (dataName) {
+                case "random":
+                    random.nextBytes(buffer);
+                    break;
+                case "compressible":
+                    fillWithWords(buffer, random);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown data: " + dataName);
+            }
             DataSource input = accessor.createSource(name, buffer, Level.Trial);
             inputs.add(input);
         }
         return inputs.build();
     }
 
+    /**
+     * Fills the buffer with words from a small vocabulary, compressing roughly like source code or class files.
+     */
+    private static void fillWithWords(byte[] buffer, Random random) {
+        byte[][] words = new byte[256][];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = new byte[3 + random.nextInt(10)];
+            for (int j = 0; j < words[i].length; j++) {
+                words[i][j] = (byte) ('a' + random.nextInt(26));
+            }
+        }
+        int position = 0;
+        while (position < buffer.length) {
+            byte[] word = words[random.nextInt(words.length)];
+            int length = Math.min(word.length, buffer.length - position);
+            System.arraycopy(word, 0, buffer, position, length);
+            position += length;
+            if (position < buffer.length) {
+                buffer[position++] = ' ';
+            }
+        }
+    }
+
     private static DataSource packSample(String name, List<DataSource> inputs, Packer packer, DataAccessor accessor) throws IOException {
         long sumLength = 0;
         for (DataSource input : inputs) {
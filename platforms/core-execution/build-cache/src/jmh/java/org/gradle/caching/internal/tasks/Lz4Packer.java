@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+public class Lz4Packer implements Packer {
+    private final Packer delegate;
+
+    public Lz4Packer(Packer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void pack(List<DataSource> inputs, DataTarget output) throws IOException {
+        delegate.pack(inputs, new DelegatingDataTarget(output) {
+            @Override
+            public OutputStream openOutput() throws IOException {
+                return new FramedLZ4CompressorOutputStream(super.openOutput(), new FramedLZ4CompressorOutputStream.Parameters(
+                    FramedLZ4CompressorOutputStream.BlockSize.M4,
+                    true,
+                    false,
+                    false,
+                    BlockLZ4CompressorOutputStream.createParameterBuilder().tunedForSpeed().build()
+                ));
+            }
+        });
+    }
+
+    @Override
+    public void unpack(DataSource input, DataTargetFactory targetFactory) throws IOException {
+        delegate.unpack(new DelegatingDataSource(input) {
+            @Override
+            public InputStream openInput() throws IOException {
+                return new FramedLZ4CompressorInputStream(super.openInput());
+            }
+        }, targetFactory);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Compares the throughput and the compression ratio of the build cache entry codecs.
+ *
+ * The compression ratio is printed when setting up each trial.
+ */
+public class TaskOutputPackagingCompressionBenchmark extends AbstractTaskOutputPackagingBenchmark {
+    @Param({"tar", "tar.gz", "tar.gz.fast", "tar.lz4", "tar.snappy.dain"})
+    String packer;
+
+    @Param({"random", "compressible"})
+    String data;
+
+    @Override
+    protected String getPackerName() {
+        return packer;
+    }
+
+    @Override
+    protected String getAccessorName() {
+        return "buffered";
+    }
+
+    @Override
+    protected String getDataName() {
+        return data;
+    }
+}
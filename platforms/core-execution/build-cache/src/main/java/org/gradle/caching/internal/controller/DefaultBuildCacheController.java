@@ -46,6 +46,7 @@
 import org.gradle.caching.local.internal.BuildCacheTempFileStore;
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.FileMetadata;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.file.TreeType;
@@ -81,6 +82,7 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final boolean emitDebugLogging;
     private final PackOperationExecutor packExecutor;
+    private final RemoteStoreQueue remoteStoreQueue;
 
     private boolean closed;
 
@@ -94,7 +96,8 @@ public DefaultBuildCacheController(
         boolean disableRemoteOnError,
         BuildCacheEntryPacker packer,
         OriginMetadataFactory originMetadataFactory,
-        StringInterner stringInterner
+        StringInterner stringInterner,
+        ExecutorFactory executorFactory
     ) {
         this.emitDebugLogging = emitDebugLogging;
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush(), buildOperationExecutor);
@@ -106,6 +109,7 @@ public DefaultBuildCacheController(
             originMetadataFactory,
             stringInterner
         );
+        this.remoteStoreQueue = RemoteStoreQueue.fromSystemProperties(remote, temporaryFileProvider, executorFactory);
     }
 
     @Override
@@ -162,7 +166,11 @@ public void store(BuildCacheKey key, CacheableEntity entity, Map<String, FileSys
         }
         tmp.withTempFile(((DefaultBuildCacheKey) key).getHashCodeInternal(), file -> {
             packExecutor.pack(file, key, entity, snapshots, executionTime);
-            remote.maybeStore(key, file);
+            if (remoteStoreQueue != null) {
+                remoteStoreQueue.store(key, file);
+            } else {
+                remote.maybeStore(key, file);
+            }
             local.maybeStore(key, file);
         });
     }
@@ -174,6 +182,10 @@ public void close() throws IOException {
             Closer closer = Closer.create();
             closer.register(local);
             closer.register(remote);
+            if (remoteStoreQueue != null) {
+                // Registered last so pending uploads are drained before the remote service is closed
+                closer.register(remoteStoreQueue);
+            }
             closer.close();
         }
     }
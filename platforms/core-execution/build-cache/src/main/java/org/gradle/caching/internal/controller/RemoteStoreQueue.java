@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import org.gradle.api.internal.file.temp.TemporaryFileProvider;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.controller.service.RemoteBuildCacheServiceHandle;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads entries to the remote build cache in the background, so workers don't wait for the network.
+ *
+ * Queued entries are copied to a spool file, as the packed entry is moved into the local cache right after storing.
+ * Once the spooled entries would exceed the budget, entries are uploaded inline instead, slowing down producers to the upload rate.
+ */
+public class RemoteStoreQueue implements Closeable {
+
+    /**
+     * Enables uploading to the remote build cache in the background.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.caching.remote.write-behind";
+
+    /**
+     * The maximum number of bytes of entries waiting for upload.
+     */
+    public static final String BUDGET_PROPERTY = "org.gradle.caching.remote.write-behind.budget";
+
+    /**
+     * The maximum number of entries uploaded concurrently.
+     */
+    public static final String PARALLELISM_PROPERTY = "org.gradle.caching.remote.write-behind.parallelism";
+
+    /**
+     * What to do with pending uploads at the end of the build, see {@link DrainPolicy}.
+     */
+    public static final String DRAIN_POLICY_PROPERTY = "org.gradle.caching.remote.write-behind.drain";
+
+    /**
+     * The number of seconds to wait for pending uploads with {@link DrainPolicy#TIMEBOX}.
+     */
+    public static final String DRAIN_TIMEOUT_PROPERTY = "org.gradle.caching.remote.write-behind.drain-timeout";
+
+    private static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final long DEFAULT_DRAIN_TIMEOUT_SECONDS = 60;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteStoreQueue.class);
+
+    enum DrainPolicy {
+        /**
+         * Wait for all pending uploads to finish.
+         */
+        WAIT,
+        /**
+         * Wait for pending uploads up to a timeout, then drop the remaining ones.
+         */
+        TIMEBOX
+    }
+
+    private final RemoteBuildCacheServiceHandle remote;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final long budget;
+    private final DrainPolicy drainPolicy;
+    private final long drainTimeoutSeconds;
+    private final ManagedExecutor executor;
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final Set<Upload> pendingUploads = ConcurrentHashMap.newKeySet();
+
+    RemoteStoreQueue(RemoteBuildCacheServiceHandle remote, TemporaryFileProvider temporaryFileProvider, ExecutorFactory executorFactory, long budget, int parallelism, DrainPolicy drainPolicy, long drainTimeoutSeconds) {
+        this.remote = remote;
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.budget = budget;
+        this.drainPolicy = drainPolicy;
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+        this.executor = executorFactory.create("Build cache upload", parallelism);
+    }
+
+    /**
+     * Creates a queue configured from system properties, or returns {@code null} if background uploads are disabled.
+     */
+    @Nullable
+    static RemoteStoreQueue fromSystemProperties(RemoteBuildCacheServiceHandle remote, TemporaryFileProvider temporaryFileProvider, ExecutorFactory executorFactory) {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY) || !remote.canStore()) {
+            return null;
+        }
+        String drainPolicy = System.getProperty(DRAIN_POLICY_PROPERTY, DrainPolicy.WAIT.name());
+        return new RemoteStoreQueue(
+            remote,
+            temporaryFileProvider,
+            executorFactory,
+            Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET),
+            Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM),
+            DrainPolicy.valueOf(drainPolicy.toUpperCase(Locale.ROOT)),
+            Long.getLong(DRAIN_TIMEOUT_PROPERTY, DEFAULT_DRAIN_TIMEOUT_SECONDS)
+        );
+    }
+
+    /**
+     * Stores the given entry to the remote cache, either in the background or, when over budget, right away.
+     * The file may be moved or deleted once this method returns.
+     */
+    void store(BuildCacheKey key, File file) {
+        long size = file.length();
+        if (queuedBytes.addAndGet(size) > budget) {
+            queuedBytes.addAndGet(-size);
+            LOGGER.debug("Build cache upload queue is full, storing entry {} in remote build cache directly", key.getDisplayName());
+            remote.maybeStore(key, file);
+            return;
+        }
+        File spooled;
+        try {
+            spooled = temporaryFileProvider.createTemporaryFile("build-cache-upload-", ".bin");
+            Files.copy(file.toPath(), spooled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UncheckedIOException e) {
+            queuedBytes.addAndGet(-size);
+            LOGGER.debug("Could not queue entry {} for upload, storing it in remote build cache directly", key.getDisplayName(), e);
+            remote.maybeStore(key, file);
+            return;
+        }
+        Upload upload = new Upload(key, spooled, size);
+        pendingUploads.add(upload);
+        try {
+            // Workers have no build operation of their own, so uploads show up as top-level operations
+            executor.execute(upload);
+        } catch (RejectedExecutionException e) {
+            pendingUploads.remove(upload);
+            upload.discard();
+            remote.maybeStore(key, file);
+        }
+    }
+
+    private class Upload implements Runnable {
+        private final BuildCacheKey key;
+        private final File spooled;
+        private final long size;
+
+        Upload(BuildCacheKey key, File spooled, long size) {
+            this.key = key;
+            this.spooled = spooled;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            if (!pendingUploads.remove(this)) {
+                // Dropped while draining
+                return;
+            }
+            try {
+                remote.maybeStore(key, spooled);
+            } finally {
+                discard();
+            }
+        }
+
+        void discard() {
+            queuedBytes.addAndGet(-size);
+            deleteSpooled(spooled);
+        }
+    }
+
+    private static void deleteSpooled(File spooled) {
+        try {
+            Files.deleteIfExists(spooled.toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Could not delete spooled build cache entry {}", spooled, e);
+        }
+    }
+
+    /**
+     * Drains pending uploads according to the drain policy.
+     */
+    @Override
+    public void close() {
+        executor.requestStop();
+        try {
+            if (drainPolicy == DrainPolicy.WAIT) {
+                while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    LOGGER.info("Waiting for {} bytes of build cache entries to be uploaded", queuedBytes.get());
+                }
+            } else if (!executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+                int dropped = dropPendingUploads();
+                LOGGER.warn("Timed out waiting for build cache uploads, dropped {} pending entries", dropped);
+                executor.shutdownNow();
+                executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS);
+                return;
+            }
+        } catch (InterruptedException e) {
+            dropPendingUploads();
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        executor.stop();
+    }
+
+    private int dropPendingUploads() {
+        int dropped = 0;
+        for (Upload upload : pendingUploads) {
+            if (pendingUploads.remove(upload)) {
+                upload.discard();
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+}
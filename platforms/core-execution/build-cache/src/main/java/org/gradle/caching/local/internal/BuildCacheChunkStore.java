@@ -0,0 +1,331 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupAction;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCodec;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.hash.PrimitiveHasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Stores the contents of local build cache entries as chunks shared between entries.
+ *
+ * An entry is decompressed and cut wherever a rolling hash over its last 64 bytes hits a boundary pattern, so a change to a few files only changes the chunks around them.
+ * Each distinct chunk is stored once under the {@value #CHUNKS_DIRECTORY} directory, while the entry itself is replaced by a manifest listing its chunks.
+ * Loading reassembles a manifest into an entry compressed with {@link BuildCacheEntryCodec#LZ4}.
+ * Chunks are verified against their hash whenever they are read, and a corrupt chunk is deleted, so it can be stored again.
+ */
+public class BuildCacheChunkStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheChunkStore.class);
+
+    public static final String CHUNKS_DIRECTORY = "chunks";
+
+    private static final int MANIFEST_MAGIC = 0x47434d46;
+    private static final int MANIFEST_VERSION = 1;
+
+    static final int MIN_CHUNK_SIZE = 8 * 1024;
+    static final int MAX_CHUNK_SIZE = 128 * 1024;
+    // 15 bits over the high end of the fingerprint give chunks of about 32 KiB above the minimum
+    private static final long BOUNDARY_MASK = 0x7fffL << 49;
+    private static final long[] GEAR = createGearTable();
+
+    private final File chunksDir;
+
+    public BuildCacheChunkStore(File cacheDir) {
+        this.chunksDir = new File(cacheDir, CHUNKS_DIRECTORY);
+    }
+
+    /**
+     * Splits the given packed entry into chunks and writes a manifest for it.
+     *
+     * @return {@code false} if the file is not a packed build cache entry, in which case it should be stored as is.
+     */
+    public boolean writeManifest(File entry, File manifest) throws IOException {
+        List<HashCode> chunks = new ArrayList<>();
+        try (InputStream input = new BufferedInputStream(new FileInputStream(entry))) {
+            input.mark(BuildCacheEntryCodec.SIGNATURE_LENGTH);
+            byte[] signature = new byte[BuildCacheEntryCodec.SIGNATURE_LENGTH];
+            int signatureLength = input.read(signature);
+            input.reset();
+            BuildCacheEntryCodec codec;
+            try {
+                codec = BuildCacheEntryCodec.detect(signature, Math.max(signatureLength, 0));
+            } catch (IOException e) {
+                return false;
+            }
+            try (InputStream decompressed = codec.decompress(input)) {
+                splitIntoChunks(decompressed, chunks);
+            }
+        }
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifest)))) {
+            output.writeInt(MANIFEST_MAGIC);
+            output.writeInt(MANIFEST_VERSION);
+            output.writeInt(chunks.size());
+            for (HashCode chunk : chunks) {
+                byte[] bytes = chunk.toByteArray();
+                output.writeByte(bytes.length);
+                output.write(bytes);
+            }
+        }
+        return true;
+    }
+
+    private void splitIntoChunks(InputStream input, List<HashCode> chunks) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            byte[] chunk = new byte[MAX_CHUNK_SIZE];
+            byte[] buffer = new byte[64 * 1024];
+            int length = 0;
+            long fingerprint = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte value = buffer[i];
+                    chunk[length++] = value;
+                    fingerprint = (fingerprint << 1) + GEAR[value & 0xff];
+                    if ((length >= MIN_CHUNK_SIZE && (fingerprint & BOUNDARY_MASK) == 0) || length == MAX_CHUNK_SIZE) {
+                        chunks.add(storeChunk(chunk, length, deflater));
+                        length = 0;
+                        fingerprint = 0;
+                    }
+                }
+            }
+            if (length > 0) {
+                chunks.add(storeChunk(chunk, length, deflater));
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private HashCode storeChunk(byte[] chunk, int length, Deflater deflater) throws IOException {
+        PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
+        hasher.putBytes(chunk, 0, length);
+        HashCode hash = hasher.hash();
+        File chunkFile = chunkFile(hash);
+        if (chunkFile.isFile() && isIntact(chunkFile, hash)) {
+            return hash;
+        }
+        File chunkDir = chunkFile.getParentFile();
+        if (!chunkDir.isDirectory() && !chunkDir.mkdirs() && !chunkDir.isDirectory()) {
+            throw new IOException("Could not create chunk directory " + chunkDir);
+        }
+        File tempFile = new File(chunkDir, chunkFile.getName() + "-" + UUID.randomUUID() + BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX);
+        try {
+            deflater.reset();
+            try (OutputStream output = new DeflaterOutputStream(new FileOutputStream(tempFile), deflater)) {
+                output.write(chunk, 0, length);
+            }
+            // Concurrent writers of the same chunk produce the same content, so whoever moves last wins
+            Files.move(tempFile.toPath(), chunkFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            if (!chunkFile.isFile()) {
+                throw e;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Reassembles the entry described by the given manifest.
+     */
+    public void reassemble(File manifest, File entry) throws IOException {
+        List<HashCode> chunks = readManifest(manifest);
+        if (chunks == null) {
+            throw new IOException("Not a build cache chunk manifest: " + manifest);
+        }
+        try (OutputStream output = BuildCacheEntryCodec.LZ4.compress(new BufferedOutputStream(new FileOutputStream(entry)))) {
+            byte[] buffer = new byte[64 * 1024];
+            for (HashCode chunk : chunks) {
+                File chunkFile = chunkFile(chunk);
+                if (!chunk.equals(copyChunk(chunkFile, buffer, output))) {
+                    deleteCorruptChunk(chunkFile);
+                    throw new IOException("Build cache chunk " + chunkFile + " does not match its hash.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given chunk file holds the chunk with the given hash.
+     */
+    private static boolean isIntact(File chunkFile, HashCode hash) {
+        try {
+            return hash.equals(copyChunk(chunkFile, new byte[64 * 1024], null));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Inflates the given chunk file, writing its content to the given output if there is one.
+     *
+     * @return the hash of the inflated content.
+     */
+    private static HashCode copyChunk(File chunkFile, byte[] buffer, @Nullable OutputStream output) throws IOException {
+        PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
+        try (InputStream input = new InflaterInputStream(new FileInputStream(chunkFile))) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, read);
+                if (output != null) {
+                    output.write(buffer, 0, read);
+                }
+            }
+        } catch (ZipException | EOFException e) {
+            deleteCorruptChunk(chunkFile);
+            throw e;
+        }
+        return hasher.hash();
+    }
+
+    private static void deleteCorruptChunk(File chunkFile) {
+        LOGGER.warn("Deleting corrupt build cache chunk {}", chunkFile);
+        try {
+            Files.deleteIfExists(chunkFile.toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Could not delete corrupt build cache chunk {}", chunkFile, e);
+        }
+    }
+
+    /**
+     * Returns whether the given file in the cache is a manifest rather than a whole entry.
+     */
+    public static boolean isManifest(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 4 && input.readInt() == MANIFEST_MAGIC;
+        }
+    }
+
+    /**
+     * Returns the chunks listed by the given manifest, or {@code null} if the file is not a manifest.
+     */
+    private static List<HashCode> readManifest(File manifest) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)))) {
+            if (manifest.length() < 12 || input.readInt() != MANIFEST_MAGIC) {
+                return null;
+            }
+            int version = input.readInt();
+            if (version != MANIFEST_VERSION) {
+                throw new IOException("Unsupported build cache chunk manifest version " + version + ": " + manifest);
+            }
+            int count = input.readInt();
+            List<HashCode> chunks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[input.readUnsignedByte()];
+                input.readFully(bytes);
+                chunks.add(HashCode.fromBytes(bytes));
+            }
+            return chunks;
+        }
+    }
+
+    private File chunkFile(HashCode hash) {
+        String name = hash.toString();
+        return new File(new File(chunksDir, name.substring(0, 2)), name);
+    }
+
+    /**
+     * Creates an action that deletes the chunks no longer referenced by a manifest in the cache directory.
+     * It needs to run after the entries themselves have been cleaned up.
+     */
+    public CleanupAction createCleanupAction() {
+        return this::deleteUnreferencedChunks;
+    }
+
+    private void deleteUnreferencedChunks(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+        File[] entries = cleanableStore.getBaseDir().listFiles(File::isFile);
+        File[] chunkDirs = chunksDir.listFiles(File::isDirectory);
+        if (entries == null || chunkDirs == null) {
+            return;
+        }
+        Set<String> referenced = new HashSet<>();
+        for (File entry : entries) {
+            try {
+                List<HashCode> chunks = readManifest(entry);
+                if (chunks != null) {
+                    for (HashCode chunk : chunks) {
+                        referenced.add(chunk.toString());
+                    }
+                }
+            } catch (IOException e) {
+                // Do not risk deleting chunks of an entry we could not read
+                LOGGER.warn("Could not read build cache chunk manifest {}, skipping chunk cleanup: {}", entry, e.getMessage());
+                return;
+            }
+        }
+        int deleted = 0;
+        for (File chunkDir : chunkDirs) {
+            File[] chunkFiles = chunkDir.listFiles();
+            if (chunkFiles == null) {
+                continue;
+            }
+            for (File chunkFile : chunkFiles) {
+                if (referenced.contains(chunkFile.getName())) {
+                    progressMonitor.incrementSkipped();
+                } else if (chunkFile.delete()) {
+                    progressMonitor.incrementDeleted();
+                    deleted++;
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            chunkDir.delete();
+        }
+        LOGGER.info("{} cleanup deleted {} unreferenced chunks.", cleanableStore.getDisplayName(), deleted);
+    }
+
+    private static long[] createGearTable() {
+        // A fixed seed keeps chunk boundaries, and thus deduplication, stable across builds
+        Random random = new Random(0x4772_6164_6c65L);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+}
@@ -27,6 +27,7 @@
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.internal.GFileUtils;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -48,14 +49,29 @@ public class DirectoryBuildCache implements BuildCacheTempFileStore, Closeable,
     private final BuildCacheTempFileStore tempFileStore;
     private final FileAccessTracker fileAccessTracker;
     private final String failedFileSuffix;
+    private final BuildCacheChunkStore chunkStore;
+    private final boolean storeChunked;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     public DirectoryBuildCache(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, null, false);
+    }
+
+    /**
+     * @param chunkStore used to load entries stored as chunks, if any.
+     * @param storeChunked whether to split new entries into chunks in the chunk store.
+     */
+    public DirectoryBuildCache(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix, @Nullable BuildCacheChunkStore chunkStore, boolean storeChunked) {
+        if (storeChunked && chunkStore == null) {
+            throw new IllegalArgumentException("Storing chunked entries requires a chunk store");
+        }
         this.fileStore = fileStore;
         this.persistentCache = persistentCache;
         this.tempFileStore = tempFileStore;
         this.fileAccessTracker = fileAccessTracker;
         this.failedFileSuffix = failedFileSuffix;
+        this.chunkStore = chunkStore;
+        this.storeChunked = storeChunked;
     }
 
     @Override
@@ -101,7 +117,18 @@ private void loadInsideLock(HashCode key, Consumer<? super File> reader) {
         fileAccessTracker.markAccessed(file);
 
         try {
-            reader.accept(file);
+            if (chunkStore != null && BuildCacheChunkStore.isManifest(file)) {
+                tempFileStore.withTempFile(key, entry -> {
+                    try {
+                        chunkStore.reassemble(file, entry);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    reader.accept(entry);
+                });
+            } else {
+                reader.accept(file);
+            }
         } catch (Exception e) {
             // Try to move the file out of the way in case its permanently corrupt
             // Don't delete, so that it can be potentially used for debugging
@@ -136,6 +163,27 @@ public void store(HashCode key, IoConsumer<OutputStream> result) {
 
     @Override
     public void storeLocally(HashCode key, File file) {
+        if (storeChunked) {
+            storeChunked(key, file);
+        } else {
+            storeWhole(key, file);
+        }
+    }
+
+    private void storeChunked(HashCode key, File file) {
+        // Hold the cache lock from writing the chunks until the manifest is in place, so cleanup never sees the chunks unreferenced
+        persistentCache.withFileLock(() -> tempFileStore.withTempFile(key, manifest -> {
+            boolean chunked;
+            try {
+                chunked = chunkStore.writeManifest(file, manifest);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            storeWhole(key, chunked ? manifest : file);
+        }));
+    }
+
+    private void storeWhole(HashCode key, File file) {
         persistentCache.withFileLock(() -> {
             lock.writeLock().lock();
             try {
@@ -29,6 +29,7 @@
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.function.Consumer;
@@ -39,7 +40,11 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
     private final DirectoryBuildCache cache;
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
-        this.cache = new DirectoryBuildCache(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix);
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, null, false);
+    }
+
+    public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix, @Nullable BuildCacheChunkStore chunkStore, boolean storeChunked) {
+        this.cache = new DirectoryBuildCache(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, chunkStore, storeChunked);
     }
 
     @Override
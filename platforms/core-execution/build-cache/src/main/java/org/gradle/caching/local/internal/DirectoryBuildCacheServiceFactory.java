@@ -20,10 +20,12 @@
 import org.gradle.api.internal.file.temp.TemporaryFileProvider;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheCleanupStrategy;
+import org.gradle.cache.CleanupAction;
 import org.gradle.cache.DefaultCacheCleanupStrategy;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.UnscopedCacheBuilderFactory;
 import org.gradle.cache.internal.CleanupActionDecorator;
+import org.gradle.cache.internal.CompositeCleanupAction;
 import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
 import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.cache.scopes.GlobalScopedCacheBuilderFactory;
@@ -47,8 +49,18 @@
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
 
+    /**
+     * Stores new entries as chunks shared between entries, see {@link BuildCacheChunkStore}.
+     * <p>
+     * Chunked entries are kept in their own default cache directory, since the cleanup of Gradle versions which don't know about chunks
+     * would delete the chunks of the entries they cannot read. A custom cache directory should not be shared with such versions.
+     */
+    public static final String CHUNKED_ENTRIES_PROPERTY = "org.gradle.caching.local.chunked";
+
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
+    private static final String CHUNKED_BUILD_CACHE_VERSION = "1";
+    private static final String CHUNKED_BUILD_CACHE_KEY = "build-cache-chunked-" + CHUNKED_BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
     private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
 
@@ -75,12 +87,13 @@ public DirectoryBuildCacheServiceFactory(
 
     @Override
     public BuildCacheService createBuildCacheService(DirectoryBuildCache configuration, Describer describer) {
+        boolean storeChunked = Boolean.getBoolean(CHUNKED_ENTRIES_PROPERTY);
         Object cacheDirectory = configuration.getDirectory();
         File target;
         if (cacheDirectory != null) {
             target = resolver.resolve(cacheDirectory);
         } else {
-            target = cacheBuilderFactory.baseDirForCrossVersionCache(BUILD_CACHE_KEY);
+            target = cacheBuilderFactory.baseDirForCrossVersionCache(storeChunked ? CHUNKED_BUILD_CACHE_KEY : BUILD_CACHE_KEY);
         }
         checkDirectory(target);
 
@@ -91,9 +104,10 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
 
         PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
+        BuildCacheChunkStore chunkStore = new BuildCacheChunkStore(target);
         PersistentCache persistentCache = unscopedCacheBuilderFactory
             .cache(target)
-            .withCleanupStrategy(createCacheCleanupStrategy(removeUnusedEntriesOlderThan))
+            .withCleanupStrategy(createCacheCleanupStrategy(removeUnusedEntriesOlderThan, chunkStore))
             .withDisplayName("Build cache")
             .withLockOptions(mode(OnDemand))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
@@ -101,15 +115,24 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
         BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(temporaryFileProvider);
         FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
 
-        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
+        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX, chunkStore, storeChunked);
     }
 
-    private CacheCleanupStrategy createCacheCleanupStrategy(Supplier<Long> removeUnusedEntriesTimestamp) {
-        return DefaultCacheCleanupStrategy.from(cleanupActionDecorator.decorate(createCleanupAction(removeUnusedEntriesTimestamp)));
+    private CacheCleanupStrategy createCacheCleanupStrategy(Supplier<Long> removeUnusedEntriesTimestamp, BuildCacheChunkStore chunkStore) {
+        return DefaultCacheCleanupStrategy.from(cleanupActionDecorator.decorate(createCleanupAction(removeUnusedEntriesTimestamp, chunkStore)));
     }
 
-    private LeastRecentlyUsedCacheCleanup createCleanupAction(Supplier<Long> removeUnusedEntriesTimestamp) {
-        return new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesTimestamp);
+    private CleanupAction createCleanupAction(Supplier<Long> removeUnusedEntriesTimestamp, BuildCacheChunkStore chunkStore) {
+        // Chunks are cleaned up once no remaining entry references them, rather than by their own access time
+        SingleDepthFilesFinder entriesFinder = new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+        LeastRecentlyUsedCacheCleanup entriesCleanup = new LeastRecentlyUsedCacheCleanup(
+            (baseDir, filter) -> entriesFinder.find(baseDir, file -> filter.accept(file) && !file.getName().equals(BuildCacheChunkStore.CHUNKS_DIRECTORY)),
+            fileAccessTimeJournal,
+            removeUnusedEntriesTimestamp
+        );
+        return CompositeCleanupAction.builder()
+            .add(entriesCleanup, chunkStore.createCleanupAction())
+            .build();
     }
 
     private static void checkDirectory(File directory) {
@@ -0,0 +1,654 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService;
+import org.gradle.internal.time.Clock;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local build cache storing entries in append-only segment files.
+ *
+ * <p>Each segment is a sequence of records, each consisting of a header with the key, the store time and the size of the entry, followed by the entry itself.
+ * Removing an entry appends a record without content.
+ * The location of every entry is kept in an in-memory index, which is rebuilt from the record headers when opening the cache.
+ * Reads use positional reads on the segment files and don't take any locks.
+ * Writes reserve space at the end of the active segment while holding a lock, and then write the record with positional writes without holding it,
+ * so entries can be stored concurrently. An entry becomes visible once its record is complete.
+ * The header of a record is written after its content, so a record interrupted by a crash is not mistaken for a complete one.
+ * The space of a record which failed to be written is turned into padding, unless it is at the end of the segment, where it is truncated.</p>
+ *
+ * <p>Access times are tracked in memory and written to a separate file when closing the cache.
+ * Unused entries are removed during {@link #cleanup()}, which also compacts the segments containing removed entries.</p>
+ */
+public class SegmentBuildCacheService implements StatefulNextGenBuildCacheService {
+
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int RECORD_MAGIC = 0x47424345;
+    private static final int PADDING_MAGIC = 0x47425044;
+    private static final long TOMBSTONE_SIZE = -1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String ACCESS_TIMES_FILE = "access-times.bin";
+    private static final String LOCK_FILE = "segments.lock";
+
+    private final Path cacheDir;
+    private final long maxSegmentSize;
+    private final int removeUnusedEntriesAfterDays;
+    private final Clock clock;
+
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Set<String> pendingStores = new HashSet<>();
+    private Segment activeSegment;
+    private int nextSegmentId;
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    public SegmentBuildCacheService(Path cacheDir, int removeUnusedEntriesAfterDays, Clock clock) {
+        this(cacheDir, DEFAULT_MAX_SEGMENT_SIZE, removeUnusedEntriesAfterDays, clock);
+    }
+
+    @VisibleForTesting
+    SegmentBuildCacheService(Path cacheDir, long maxSegmentSize, int removeUnusedEntriesAfterDays, Clock clock) {
+        this.cacheDir = cacheDir;
+        this.maxSegmentSize = maxSegmentSize;
+        this.removeUnusedEntriesAfterDays = removeUnusedEntriesAfterDays;
+        this.clock = clock;
+    }
+
+    @Override
+    public void open() {
+        try {
+            Files.createDirectories(cacheDir);
+            lockChannel = FileChannel.open(cacheDir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+            if (lock == null) {
+                throw new BuildCacheException("Build cache in " + cacheDir + " is in use by another process.");
+            }
+            for (Map.Entry<Integer, Path> segmentFile : listSegmentFiles().entrySet()) {
+                Segment segment = new Segment(segmentFile.getKey(), segmentFile.getValue());
+                segments.put(segment.id, segment);
+                segment.scan(index);
+                activeSegment = segment;
+                nextSegmentId = segment.id + 1;
+            }
+            readAccessTimes();
+        } catch (IOException | OverlappingFileLockException e) {
+            closeFiles();
+            throw new BuildCacheException("opening " + cacheDir, e);
+        }
+    }
+
+    @Override
+    public boolean contains(BuildCacheKey key) {
+        return index.containsKey(key.getHashCode());
+    }
+
+    @Override
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        IndexEntry entry = index.get(key.getHashCode());
+        if (entry == null) {
+            return false;
+        }
+        entry.accessed = clock.getCurrentTime();
+        try (InputStream input = new SegmentInputStream(segments.get(entry.segmentId).channel, entry.contentOffset, entry.size)) {
+            reader.readFrom(input);
+            return true;
+        } catch (IOException e) {
+            throw new BuildCacheException("loading " + key, e);
+        }
+    }
+
+    @Override
+    public void store(BuildCacheKey key, NextGenWriter writer) throws BuildCacheException {
+        String entryKey = key.getHashCode();
+        long now = clock.getCurrentTime();
+        Segment.PendingRecord record;
+        synchronized (writeLock) {
+            if (index.containsKey(entryKey) || !pendingStores.add(entryKey)) {
+                return;
+            }
+            try {
+                record = reserve(entryKey, now, writer.getSize());
+            } catch (IOException | RuntimeException e) {
+                pendingStores.remove(entryKey);
+                throw storeFailure(key, e);
+            }
+        }
+        try {
+            record.write(writer::writeTo);
+        } catch (IOException | RuntimeException e) {
+            synchronized (writeLock) {
+                pendingStores.remove(entryKey);
+                discard(record, e);
+            }
+            throw storeFailure(key, e);
+        }
+        synchronized (writeLock) {
+            pendingStores.remove(entryKey);
+            record.entry.accessed = now;
+            index.put(entryKey, record.entry);
+        }
+    }
+
+    private static RuntimeException storeFailure(BuildCacheKey key, Exception failure) {
+        return failure instanceof RuntimeException
+            ? (RuntimeException) failure
+            : new BuildCacheException("storing " + key, failure);
+    }
+
+    @VisibleForTesting
+    public boolean remove(BuildCacheKey key) throws BuildCacheException {
+        String entryKey = key.getHashCode();
+        synchronized (writeLock) {
+            if (index.remove(entryKey) == null) {
+                return false;
+            }
+            try {
+                append(entryKey, clock.getCurrentTime(), TOMBSTONE_SIZE, output -> {
+                });
+                return true;
+            } catch (IOException e) {
+                throw new BuildCacheException("removing " + key, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (lock != null) {
+            try {
+                writeAccessTimes();
+            } catch (IOException e) {
+                throw new BuildCacheException("closing " + cacheDir, e);
+            } finally {
+                closeFiles();
+            }
+        } else {
+            closeFiles();
+        }
+    }
+
+    /**
+     * Removes entries which haven't been used for the configured number of days and compacts the segments they were stored in.
+     *
+     * Cleanup is done after all Build cache controllers are closed, so we don't need to care about concurrent access.
+     */
+    @Override
+    public void cleanup() {
+        close();
+        open();
+        try {
+            long deleteThresholdMillis = clock.getCurrentTime() - TimeUnit.DAYS.toMillis(removeUnusedEntriesAfterDays);
+            index.values().removeIf(entry -> entry.accessed < deleteThresholdMillis);
+            compact();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact build cache segments", e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Copies the live entries of all segments containing removed entries to a new segment, and deletes the old segments.
+     *
+     * Segments are deleted in the order they were written, so a removal record is never deleted before the entry it removes.
+     */
+    private void compact() throws IOException {
+        Map<Integer, List<Map.Entry<String, IndexEntry>>> liveEntriesBySegment = new TreeMap<>();
+        Map<Integer, Long> liveBytesBySegment = new HashMap<>();
+        for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+            int segmentId = entry.getValue().segmentId;
+            liveEntriesBySegment.computeIfAbsent(segmentId, id -> new ArrayList<>()).add(entry);
+            liveBytesBySegment.merge(segmentId, entry.getValue().recordSize(), Long::sum);
+        }
+        List<Segment> segmentsToCompact = new ArrayList<>();
+        for (Segment segment : new TreeMap<>(segments).values()) {
+            if (liveBytesBySegment.getOrDefault(segment.id, 0L) != segment.length) {
+                segmentsToCompact.add(segment);
+            }
+        }
+        if (segmentsToCompact.isEmpty()) {
+            return;
+        }
+        // Never append to a segment which is being compacted
+        activeSegment = null;
+        for (Segment segment : segmentsToCompact) {
+            for (Map.Entry<String, IndexEntry> entry : liveEntriesBySegment.getOrDefault(segment.id, Collections.emptyList())) {
+                IndexEntry oldEntry = entry.getValue();
+                IndexEntry newEntry = append(entry.getKey(), oldEntry.stored, oldEntry.size, output -> segment.copyContentTo(oldEntry, output));
+                newEntry.accessed = oldEntry.accessed;
+                entry.setValue(newEntry);
+            }
+            segments.remove(segment.id);
+            segment.close();
+            Files.delete(segment.path);
+        }
+    }
+
+    /**
+     * Writes a record while holding the write lock.
+     */
+    private IndexEntry append(String key, long stored, long size, ContentWriter content) throws IOException {
+        Segment.PendingRecord record = reserve(key, stored, size);
+        try {
+            record.write(content);
+        } catch (IOException | RuntimeException e) {
+            discard(record, e);
+            throw e;
+        }
+        return record.entry;
+    }
+
+    /**
+     * Reserves space for a record at the end of the active segment. Must be called while holding the write lock.
+     */
+    private Segment.PendingRecord reserve(String key, long stored, long size) throws IOException {
+        Segment segment = activeSegment;
+        if (segment == null || segment.length >= maxSegmentSize) {
+            segment = new Segment(nextSegmentId++, null);
+            segments.put(segment.id, segment);
+            activeSegment = segment;
+        }
+        return segment.reserve(key, stored, size);
+    }
+
+    /**
+     * Releases the space of a record which failed to be written. Must be called while holding the write lock.
+     */
+    private static void discard(Segment.PendingRecord record, Exception failure) {
+        try {
+            record.discard();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private Map<Integer, Path> listSegmentFiles() throws IOException {
+        Map<Integer, Path> segmentFiles = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String id = fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segmentFiles.put(Integer.parseInt(id), file);
+                } catch (NumberFormatException e) {
+                    // Not a segment
+                }
+            }
+        }
+        return segmentFiles;
+    }
+
+    private void readAccessTimes() throws IOException {
+        Path accessTimesFile = cacheDir.resolve(ACCESS_TIMES_FILE);
+        if (!Files.isRegularFile(accessTimesFile)) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(accessTimesFile)))) {
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = input.readUTF();
+                long accessed = input.readLong();
+                IndexEntry entry = index.get(key);
+                if (entry != null && accessed > entry.accessed) {
+                    entry.accessed = accessed;
+                }
+            }
+        } catch (EOFException e) {
+            // A truncated file only loses access times, the entries are still valid
+        }
+    }
+
+    private void writeAccessTimes() throws IOException {
+        Path accessTimesFile = cacheDir.resolve(ACCESS_TIMES_FILE);
+        Path tempFile = cacheDir.resolve(ACCESS_TIMES_FILE + ".tmp");
+        List<Map.Entry<String, IndexEntry>> entries = new ArrayList<>(index.entrySet());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            output.writeInt(entries.size());
+            for (Map.Entry<String, IndexEntry> entry : entries) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().accessed);
+            }
+        }
+        Files.move(tempFile, accessTimesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void closeFiles() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+        activeSegment = null;
+        nextSegmentId = 0;
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            throw new BuildCacheException("closing " + cacheDir, e);
+        } finally {
+            lock = null;
+            lockChannel = null;
+        }
+    }
+
+    private interface ContentWriter {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    private static class IndexEntry {
+        private final int segmentId;
+        private final long recordOffset;
+        private final long contentOffset;
+        private final long size;
+        private final long stored;
+        private volatile long accessed;
+
+        IndexEntry(int segmentId, long recordOffset, long contentOffset, long size, long stored) {
+            this.segmentId = segmentId;
+            this.recordOffset = recordOffset;
+            this.contentOffset = contentOffset;
+            this.size = size;
+            this.stored = stored;
+            this.accessed = stored;
+        }
+
+        long recordSize() {
+            return contentOffset + size - recordOffset;
+        }
+    }
+
+    private class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private long length;
+
+        Segment(int id, @Nullable Path existingPath) throws IOException {
+            this.id = id;
+            this.path = existingPath != null ? existingPath : cacheDir.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.length = channel.size();
+        }
+
+        /**
+         * Adds the records of this segment to the index.
+         *
+         * A partially written record at the end of the segment, left behind by a crash, is truncated.
+         */
+        void scan(Map<String, IndexEntry> index) throws IOException {
+            long fileSize = length;
+            long offset = 0;
+            while (offset < fileSize) {
+                DataInputStream header = new DataInputStream(new BufferedInputStream(new SegmentInputStream(channel, offset, fileSize - offset), 512));
+                IndexEntry entry;
+                String key;
+                try {
+                    int magic = header.readInt();
+                    if (magic != RECORD_MAGIC && magic != PADDING_MAGIC) {
+                        break;
+                    }
+                    key = header.readUTF();
+                    long stored = header.readLong();
+                    long size = header.readLong();
+                    long contentOffset = offset + 4 + 2 + utfLength(key) + 8 + 8;
+                    if (magic == PADDING_MAGIC) {
+                        if (contentOffset + Math.max(size, 0) > fileSize) {
+                            break;
+                        }
+                        offset = contentOffset + Math.max(size, 0);
+                        continue;
+                    }
+                    if (size == TOMBSTONE_SIZE && contentOffset <= fileSize) {
+                        index.remove(key);
+                        offset = contentOffset;
+                        continue;
+                    }
+                    if (size < 0 || contentOffset + size > fileSize) {
+                        break;
+                    }
+                    entry = new IndexEntry(id, offset, contentOffset, size, stored);
+                } catch (EOFException | IllegalArgumentException e) {
+                    break;
+                }
+                index.putIfAbsent(key, entry);
+                offset = entry.contentOffset + entry.size;
+            }
+            if (offset < fileSize) {
+                channel.truncate(offset);
+            }
+            length = offset;
+        }
+
+        /**
+         * Reserves space for a record at the end of this segment. Must be called while holding the write lock.
+         */
+        PendingRecord reserve(String key, long stored, long size) throws IOException {
+            long recordOffset = length;
+            byte[] header = header(RECORD_MAGIC, key, stored, size);
+            long contentOffset = recordOffset + header.length;
+            length = contentOffset + Math.max(size, 0);
+            return new PendingRecord(key, header, new IndexEntry(id, recordOffset, contentOffset, size, stored));
+        }
+
+        private byte[] header(int magic, String key, long stored, long size) throws IOException {
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(magic);
+            header.writeUTF(key);
+            header.writeLong(stored);
+            header.writeLong(size);
+            return headerBytes.toByteArray();
+        }
+
+        void copyContentTo(IndexEntry entry, OutputStream output) throws IOException {
+            try (InputStream input = new SegmentInputStream(channel, entry.contentOffset, entry.size)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    output.write(buffer, 0, read);
+                }
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) throws IOException {
+            long current = position;
+            while (buffer.hasRemaining()) {
+                current += channel.write(buffer, current);
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new BuildCacheException("closing " + path, e);
+            }
+        }
+
+        /**
+         * A record for which space has been reserved, but which is not complete yet.
+         */
+        class PendingRecord {
+            private final String key;
+            private final byte[] header;
+            private final IndexEntry entry;
+
+            PendingRecord(String key, byte[] header, IndexEntry entry) {
+                this.key = key;
+                this.header = header;
+                this.entry = entry;
+            }
+
+            /**
+             * Writes the record into the reserved space. Doesn't need the write lock, as the space is not shared with other records.
+             */
+            void write(ContentWriter content) throws IOException {
+                long contentLength = Math.max(entry.size, 0);
+                SegmentOutputStream contentOutput = new SegmentOutputStream(key, entry.contentOffset, entry.contentOffset + contentLength);
+                try (OutputStream output = new BufferedOutputStream(contentOutput)) {
+                    content.writeTo(output);
+                }
+                if (contentOutput.position - entry.contentOffset != contentLength) {
+                    throw new IOException(String.format("Expected entry '%s' to be %d bytes long, but %d bytes were written.", key, entry.size, contentOutput.position - entry.contentOffset));
+                }
+                writeFully(ByteBuffer.wrap(header), entry.recordOffset);
+            }
+
+            /**
+             * Releases the reserved space. Must be called while holding the write lock.
+             */
+            void discard() throws IOException {
+                if (entry.contentOffset + Math.max(entry.size, 0) == length) {
+                    channel.truncate(entry.recordOffset);
+                    length = entry.recordOffset;
+                } else {
+                    // Space after this record has been reserved already, so the record is turned into padding with a header of the same length
+                    writeFully(ByteBuffer.wrap(header(PADDING_MAGIC, key, entry.stored, entry.size)), entry.recordOffset);
+                }
+            }
+        }
+
+        private class SegmentOutputStream extends OutputStream {
+            private final String key;
+            private final long end;
+            private long position;
+
+            SegmentOutputStream(String key, long position, long end) {
+                this.key = key;
+                this.position = position;
+                this.end = end;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (position + len > end) {
+                    throw new IOException(String.format("Entry '%s' is longer than the space reserved for it.", key));
+                }
+                writeFully(ByteBuffer.wrap(b, off, len), position);
+                position += len;
+            }
+        }
+    }
+
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Reads a region of a segment using positional reads, so concurrent readers don't interfere with each other.
+     */
+    private static class SegmentInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        SegmentInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read < 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.gradle.caching.internal.controller.service.BuildCacheServicesConfigur
 import org.gradle.caching.internal.origin.OriginMetadataFactory
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.hash.HashCode
 import org.gradle.internal.hash.TestHashCodes
 import org.gradle.internal.operations.NoOpBuildOperationProgressEventEmitter
@@ -36,10 +37,13 @@ import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.snapshot.FileSystemSnapshot
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.util.Path
+import org.gradle.util.SetSystemProperties
 import org.junit.Rule
 import spock.lang.Specification
 
 import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
 import java.util.function.Consumer
 
 class DefaultBuildCacheControllerTest extends Specification {
@@ -67,10 +71,18 @@ class DefaultBuildCacheControllerTest extends Specification {
 
     def operations = new TestBuildOperationExecutor()
     def buildOperationProgressEmitter = new NoOpBuildOperationProgressEventEmitter()
+    def executorFactory = new DefaultExecutorFactory()
 
     @Rule
     final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
 
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
     interface Local extends BuildCacheService, LocalBuildCacheService {}
 
     BuildCacheController getController(boolean disableRemoteOnError = true) {
@@ -90,7 +102,8 @@ class DefaultBuildCacheControllerTest extends Specification {
             disableRemoteOnError,
             packer,
             originMetadataFactory,
-            stringInterner
+            stringInterner,
+            executorFactory
         )
     }
 
@@ -278,4 +291,37 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * local.close()
         1 * remote.close()
     }
+
+    def "uploads pending entries before closing the remote cache when uploading in the background"() {
+        given:
+        System.setProperty(RemoteStoreQueue.ENABLED_PROPERTY, "true")
+        def controller = getController()
+        tmpDir.file("file").text = "content"
+        def uploadStarted = new CountDownLatch(1)
+        def releaseUpload = new CountDownLatch(1)
+        def events = new CopyOnWriteArrayList<String>()
+        remote.store(key, _) >> {
+            uploadStarted.countDown()
+            releaseUpload.await()
+            events << "store"
+        }
+        remote.close() >> { events << "close" }
+
+        when:
+        controller.store(key, cacheableEntity, snapshots, executionTime)
+        uploadStarted.await()
+        def closing = Thread.start { controller.close() }
+        closing.join(100)
+
+        then:
+        closing.alive
+        events.empty
+
+        when:
+        releaseUpload.countDown()
+        closing.join()
+
+        then:
+        events == ["store", "close"]
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller
+
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.caching.internal.DefaultBuildCacheKey
+import org.gradle.caching.internal.controller.service.RemoteBuildCacheServiceHandle
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class RemoteStoreQueueTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def key = new DefaultBuildCacheKey(TestHashCodes.hashCodeFrom(12345678))
+    def remote = Mock(RemoteBuildCacheServiceHandle)
+    def spoolDir = tmpDir.createDir("spool")
+    def temporaryFileProvider = TestFiles.tmpDirTemporaryFileProvider(spoolDir)
+    def executorFactory = new DefaultExecutorFactory()
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "uploads a copy of the entry in the background"() {
+        def queue = new RemoteStoreQueue(remote, temporaryFileProvider, executorFactory, 1024, 1, RemoteStoreQueue.DrainPolicy.WAIT, 0)
+        def entry = tmpDir.file("entry")
+        entry.text = "content"
+        def uploaded = null
+
+        when:
+        queue.store(key, entry)
+        entry.delete()
+        queue.close()
+
+        then:
+        1 * remote.maybeStore(key, _) >> { k, File file ->
+            uploaded = file.text
+            true
+        }
+        uploaded == "content"
+        spoolDir.listFiles().length == 0
+    }
+
+    def "uploads entries inline once over budget"() {
+        def queue = new RemoteStoreQueue(remote, temporaryFileProvider, executorFactory, 4, 1, RemoteStoreQueue.DrainPolicy.WAIT, 0)
+        def entry = tmpDir.file("entry")
+        entry.text = "content"
+
+        when:
+        queue.store(key, entry)
+
+        then:
+        1 * remote.maybeStore(key, entry) >> true
+        spoolDir.listFiles().length == 0
+
+        cleanup:
+        queue.close()
+    }
+
+    def "drops pending uploads when draining times out"() {
+        def queue = new RemoteStoreQueue(remote, temporaryFileProvider, executorFactory, 1024, 1, RemoteStoreQueue.DrainPolicy.TIMEBOX, 1)
+        def otherKey = new DefaultBuildCacheKey(TestHashCodes.hashCodeFrom(87654321))
+        def entry = tmpDir.file("entry")
+        entry.text = "content"
+        def uploadStarted = new CountDownLatch(1)
+
+        when:
+        queue.store(key, entry)
+        uploadStarted.await(10, TimeUnit.SECONDS)
+        queue.store(otherKey, entry)
+        queue.close()
+
+        then:
+        1 * remote.maybeStore(key, _) >> {
+            uploadStarted.countDown()
+            try {
+                Thread.sleep(10_000)
+            } catch (InterruptedException ignored) {
+            }
+            false
+        }
+        0 * remote.maybeStore(otherKey, _)
+        spoolDir.listFiles().length == 0
+    }
+}
@@ -29,6 +29,7 @@ import org.gradle.internal.file.FileAccessTimeJournal
 import org.gradle.internal.resource.local.PathKeyFileStore
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.SetSystemProperties
 import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Specification
@@ -37,6 +38,7 @@ import spock.lang.Specification
 @CleanupTestDirectory
 class DirectoryBuildCacheServiceFactoryTest extends Specification {
     @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    @Rule SetSystemProperties systemProperties = new SetSystemProperties()
 
     def cacheRepository = Mock(UnscopedCacheBuilderFactory)
     def globalScopedCache = Mock(GlobalScopedCacheBuilderFactory)
@@ -65,6 +67,23 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
         0 * _
     }
 
+    def "uses a separate default directory for chunked entries"() {
+        def cacheDir = temporaryFolder.file("build-cache-chunked-1")
+        System.setProperty(DirectoryBuildCacheServiceFactory.CHUNKED_ENTRIES_PROPERTY, "true")
+
+        when:
+        def service = factory.createBuildCacheService(config, buildCacheDescriber)
+        then:
+        service instanceof DirectoryBuildCacheService
+        1 * config.getDirectory() >> null
+        1 * config.getRemoveUnusedEntriesAfterDays() >> 10
+        1 * globalScopedCache.baseDirForCrossVersionCache("build-cache-chunked-1") >> cacheDir
+        1 * fileStoreFactory.createFileStore(cacheDir) >> Mock(PathKeyFileStore)
+        1 * cacheRepository.cache(cacheDir) >> cacheBuilder
+        1 * cleanupActionDecorator.decorate(_) >> Mock(CleanupAction)
+        0 * _
+    }
+
     def "can create service with given directory"() {
         def cacheDir = temporaryFolder.file("cache-dir")
 
@@ -18,6 +18,7 @@ package org.gradle.caching.local.internal
 
 import org.gradle.api.internal.file.temp.DefaultTemporaryFileProvider
 import org.gradle.cache.PersistentCache
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCodec
 import org.gradle.internal.file.FileAccessTracker
 import org.gradle.internal.hash.TestHashCodes
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore
@@ -28,6 +29,8 @@ import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Specification
 
+import java.util.zip.DeflaterOutputStream
+
 @UsesNativeServices
 @CleanupTestDirectory
 class DirectoryBuildCacheTest extends Specification {
@@ -111,4 +114,112 @@ class DirectoryBuildCacheTest extends Specification {
         1 * fileAccessTracker.markAccessed(cachedFile)
         loaded
     }
+
+    def "stores packed entries as shared chunks when enabled"() {
+        def chunkStore = new BuildCacheChunkStore(cacheDir)
+        def chunkedCache = new DirectoryBuildCache(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", chunkStore, true)
+        def otherKey = TestHashCodes.hashCodeFrom(87654321)
+        def random = new Random(0)
+        def shared = new byte[4 * BuildCacheChunkStore.MAX_CHUNK_SIZE]
+        random.nextBytes(shared)
+        def content = concat(shared, ("first" * 100).bytes)
+        def otherContent = concat(shared, ("second" * 100).bytes)
+
+        when:
+        chunkedCache.storeLocally(key, packedEntry("first", content))
+        def chunkCount = chunkFiles().size()
+        chunkedCache.storeLocally(otherKey, packedEntry("second", otherContent))
+
+        then:
+        BuildCacheChunkStore.isManifest(new File(cacheDir, hashCode))
+        BuildCacheChunkStore.isManifest(new File(cacheDir, otherKey.toString()))
+        // Only the chunks around the differing tail are added for the second entry
+        chunkFiles().size() <= chunkCount + 2
+
+        and:
+        unpacked(chunkedCache, key) == content
+        unpacked(chunkedCache, otherKey) == otherContent
+    }
+
+    def "stores files that are not packed entries whole when chunking is enabled"() {
+        def chunkedCache = new DirectoryBuildCache(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", new BuildCacheChunkStore(cacheDir), true)
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "bar"
+
+        when:
+        chunkedCache.storeLocally(key, originalFile)
+
+        then:
+        new File(cacheDir, hashCode).text == "bar"
+        chunkFiles().empty
+    }
+
+    def "deletes a chunk which does not match its hash when loading"() {
+        def chunkedCache = new DirectoryBuildCache(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", new BuildCacheChunkStore(cacheDir), true)
+        def content = new byte[4 * BuildCacheChunkStore.MAX_CHUNK_SIZE]
+        new Random(0).nextBytes(content)
+        chunkedCache.storeLocally(key, packedEntry("entry", content))
+        def corruptChunk = chunkFiles().first()
+        writeChunk(corruptChunk, "corrupt".bytes)
+
+        when:
+        unpacked(chunkedCache, key)
+
+        then:
+        def e = thrown(UncheckedIOException)
+        e.cause.message.contains("does not match its hash")
+        !corruptChunk.exists()
+        !new File(cacheDir, hashCode).exists()
+        new File(cacheDir, hashCode + ".failed").exists()
+    }
+
+    def "replaces a corrupt chunk when storing an entry containing it"() {
+        def chunkedCache = new DirectoryBuildCache(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", new BuildCacheChunkStore(cacheDir), true)
+        def otherKey = TestHashCodes.hashCodeFrom(87654321)
+        def content = new byte[4 * BuildCacheChunkStore.MAX_CHUNK_SIZE]
+        new Random(0).nextBytes(content)
+        chunkedCache.storeLocally(key, packedEntry("first", content))
+        chunkFiles().each { writeChunk(it, "corrupt".bytes) }
+
+        when:
+        chunkedCache.storeLocally(otherKey, packedEntry("second", content))
+
+        then:
+        unpacked(chunkedCache, key) == content
+        unpacked(chunkedCache, otherKey) == content
+    }
+
+    private static void writeChunk(File chunkFile, byte[] content) {
+        new DeflaterOutputStream(new FileOutputStream(chunkFile)).withStream { it.write(content) }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        def output = new ByteArrayOutputStream()
+        output.write(first)
+        output.write(second)
+        return output.toByteArray()
+    }
+
+    private File packedEntry(String name, byte[] content) {
+        def file = temporaryFolder.createFile(name)
+        file.withOutputStream { output ->
+            def compressed = BuildCacheEntryCodec.GZIP.compress(output)
+            compressed.write(content)
+            compressed.close()
+        }
+        return file
+    }
+
+    private byte[] unpacked(DirectoryBuildCache cache, key) {
+        byte[] result = null
+        assert cache.load(key) { input ->
+            result = BuildCacheEntryCodec.LZ4.decompress(input).bytes
+        }
+        return result
+    }
+
+    private List<File> chunkFiles() {
+        def chunksDir = new File(cacheDir, BuildCacheChunkStore.CHUNKS_DIRECTORY)
+        return chunksDir.exists() ? chunksDir.listFiles().collectMany { it.listFiles() as List } : []
+    }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.StatefulNextGenBuildCacheService
+import org.gradle.caching.internal.controller.service.StoreTarget
+import org.gradle.internal.time.Clock
+import org.gradle.internal.time.Time
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class SegmentBuildCacheServiceTest extends Specification {
+
+    private static final int REMOVE_UNUSED_ENTRIES_AFTER_7_DAYS = 7
+
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def cacheDir = temporaryFolder.createDir("segments")
+    SegmentBuildCacheService service
+
+    def setup() {
+        openServiceWithClock(Time.clock())
+    }
+
+    def cleanup() {
+        service.close()
+    }
+
+    BuildCacheKey key = key("1234abcd")
+    BuildCacheKey otherKey = key("12345abcde")
+
+    def "can write and read entries"() {
+        given:
+        service.store(key, storeTarget("Hello world"))
+
+        expect:
+        service.contains(key)
+        !service.contains(otherKey)
+        read(key) == "Hello world"
+        read(otherKey) == null
+    }
+
+    def "can read entries with a new service"() {
+        given:
+        service.store(key, storeTarget("Hello world"))
+        service.close()
+
+        when:
+        openServiceWithClock(Time.clock())
+
+        then:
+        read(key) == "Hello world"
+    }
+
+    def "doesn't write entry if the entry with the same key already exists"() {
+        when:
+        service.store(key, storeTarget("Hello world"))
+        service.store(key, storeTarget("Hello Bob"))
+
+        then:
+        read(key) == "Hello world"
+    }
+
+    def "removed entries stay removed with a new service"() {
+        given:
+        service.store(key, storeTarget("Hello world"))
+        service.store(otherKey, storeTarget("Hello Bob"))
+
+        when:
+        service.remove(key)
+        service.close()
+        openServiceWithClock(Time.clock())
+
+        then:
+        !service.contains(key)
+        read(otherKey) == "Hello Bob"
+    }
+
+    def "ignores partially written entry at the end of a segment"() {
+        given:
+        service.store(key, storeTarget("Hello world"))
+        service.store(otherKey, storeTarget("Hello Bob"))
+        service.close()
+        def segment = cacheDir.file("segment-0.bin")
+        segment.bytes = segment.bytes[0..-3] as byte[]
+
+        when:
+        openServiceWithClock(Time.clock())
+
+        then:
+        read(key) == "Hello world"
+        !service.contains(otherKey)
+
+        when:
+        service.store(otherKey, storeTarget("Hello again"))
+
+        then:
+        read(otherKey) == "Hello again"
+    }
+
+    def "can read entries concurrently across multiple segments"() {
+        given:
+        openServiceWithClock(Time.clock(), 64)
+        def keys = (1..200).collect { key("key-$it") }
+        keys.each { service.store(it, storeTarget("content of ${it.hashCode}")) }
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def results = keys.collect { k -> executor.submit({ read(k) } as java.util.concurrent.Callable) }.collect { it.get() }
+
+        then:
+        results == keys.collect { "content of ${it.hashCode}" }
+        cacheDir.listFiles().count { it.name.startsWith("segment-") } > 1
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "can store entries concurrently"() {
+        given:
+        openServiceWithClock(Time.clock(), 64)
+        def keys = (1..200).collect { key("key-$it") }
+        def targets = keys.collect { storeTarget("content of ${it.hashCode}") }
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        keys.indices.collect { i -> executor.submit({ service.store(keys[i], targets[i]) } as Runnable) }.each { it.get() }
+        openServiceWithClock(Time.clock(), 64)
+
+        then:
+        keys.collect { read(it) } == keys.collect { "content of ${it.hashCode}" }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "entries stored after an entry which fails to be written are kept"() {
+        given:
+        def writing = new CountDownLatch(1)
+        def fail = new CountDownLatch(1)
+        def failingWriter = Stub(StatefulNextGenBuildCacheService.NextGenWriter) {
+            getSize() >> 11
+            writeTo(_) >> { OutputStream output ->
+                output.write("Hello".bytes)
+                writing.countDown()
+                fail.await()
+                throw new IOException("Broken")
+            }
+        }
+        def executor = Executors.newSingleThreadExecutor()
+
+        when:
+        def failingStore = executor.submit({ service.store(key, failingWriter) } as Runnable)
+        writing.await()
+        service.store(otherKey, storeTarget("Hello Bob"))
+        fail.countDown()
+        failingStore.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof BuildCacheException
+        !service.contains(key)
+        read(otherKey) == "Hello Bob"
+
+        when:
+        openServiceWithClock(Time.clock())
+
+        then:
+        !service.contains(key)
+        read(otherKey) == "Hello Bob"
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "does a cleanup of old entries over a moving period of time"() {
+        given:
+        def now = Time.currentTimeMillis()
+        openServiceWithClock({ now - TimeUnit.DAYS.toMillis(6) }, 32)
+        service.store(key, storeTarget("Hello Bob"))
+        openServiceWithClock({ now }, 32)
+        service.store(otherKey, storeTarget("Hello world"))
+
+        when:
+        service.cleanup()
+
+        then:
+        service.open()
+        service.contains(key)
+        service.contains(otherKey)
+
+        when:
+        openServiceWithClock({ now + TimeUnit.DAYS.toMillis(6) }, 32)
+        service.cleanup()
+
+        then:
+        service.open()
+        !service.contains(key)
+        service.contains(otherKey)
+
+        when:
+        openServiceWithClock({ now + TimeUnit.DAYS.toMillis(8) }, 32)
+        service.cleanup()
+
+        then:
+        service.open()
+        !service.contains(key)
+        !service.contains(otherKey)
+        cacheDir.listFiles().count { it.name.startsWith("segment-") } == 0
+    }
+
+    def "reading an entry keeps it from being cleaned up"() {
+        given:
+        def now = Time.currentTimeMillis()
+        openServiceWithClock({ now })
+        service.store(key, storeTarget("Hello world"))
+        service.store(otherKey, storeTarget("Hello Bob"))
+        openServiceWithClock({ now + TimeUnit.DAYS.toMillis(6) })
+        read(key)
+
+        when:
+        openServiceWithClock({ now + TimeUnit.DAYS.toMillis(8) })
+        service.cleanup()
+
+        then:
+        service.open()
+        read(key) == "Hello world"
+        !service.contains(otherKey)
+    }
+
+    private String read(BuildCacheKey key) {
+        String result = null
+        service.load(key, new BuildCacheEntryReader() {
+            @Override
+            void readFrom(InputStream input) throws IOException {
+                result = input.text
+            }
+        })
+        return result
+    }
+
+    private StoreTarget storeTarget(String content) {
+        def file = temporaryFolder.file("entries").createDir().file(UUID.randomUUID().toString())
+        file.text = content
+        return new StoreTarget(file)
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    private void openServiceWithClock(Clock clock, long maxSegmentSize = 64 * 1024 * 1024) {
+        if (service != null) {
+            service.close()
+        }
+        service = new SegmentBuildCacheService(cacheDir.toPath(), maxSegmentSize, REMOVE_UNUSED_ENTRIES_AFTER_7_DAYS, clock)
+        service.open()
+    }
+}
@@ -22,6 +22,7 @@
 import org.gradle.internal.execution.caching.CachingState;
 import org.gradle.internal.execution.caching.CachingStateFactory;
 import org.gradle.internal.execution.history.BeforeExecutionState;
+import org.gradle.internal.hash.FileContentHashMode;
 import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.hash.Hashing;
 import org.slf4j.Logger;
@@ -37,6 +38,13 @@ public DefaultCachingStateFactory(Logger logger) {
     public final CachingState createCachingState(BeforeExecutionState beforeExecutionState, ImmutableList<CachingDisabledReason> cachingDisabledReasons) {
         final Hasher cacheKeyHasher = Hashing.newHasher();
 
+        FileContentHashMode fileContentHashMode = FileContentHashMode.current();
+        if (fileContentHashMode != FileContentHashMode.DEFAULT) {
+            // Keep keys produced with the default mode stable, but never mix them with keys based on other content hashes
+            logger.warn("Appending file content hash mode to build cache key: {}", fileContentHashMode.getVersion());
+            cacheKeyHasher.putString(fileContentHashMode.getVersion());
+        }
+
         logger.warn("Appending implementation to build cache key: {}",
             beforeExecutionState.getImplementation());
         beforeExecutionState.getImplementation().appendToHasher(cacheKeyHasher);
@@ -29,6 +29,7 @@
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
+import org.gradle.internal.hash.FileContentHashMode;
 
 import java.util.Optional;
 import java.util.function.Supplier;
@@ -54,7 +55,7 @@ public DefaultExecutionHistoryStore(
 
         CacheDecorator inMemoryCacheDecorator = inMemoryCacheDecoratorFactory.decorator(10000, false);
         this.store = cache.get().createIndexedCache(
-            IndexedCacheParameters.of("executionHistory", String.class, serializer)
+            IndexedCacheParameters.of(FileContentHashMode.current().getCacheName("executionHistory"), String.class, serializer)
             .withCacheDecorator(inMemoryCacheDecorator)
         );
     }
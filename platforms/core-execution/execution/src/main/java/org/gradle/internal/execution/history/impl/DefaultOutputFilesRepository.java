@@ -80,6 +80,10 @@ public void visitRegularFile(RegularFileSnapshot fileSnapshot) {
 
                     private void recordOutputSnapshot(FileSystemLocationSnapshot snapshot) {
                         String outputPath = snapshot.getAbsolutePath();
+                        if (outputFiles.getIfPresent(outputPath) == Boolean.TRUE) {
+                            // Already recorded by an earlier execution, and so are its parents; avoid writing the same entries again
+                            return;
+                        }
                         File outputFile = new File(outputPath);
                         outputFiles.put(outputPath, Boolean.TRUE);
                         File outputFileParent = outputFile.getParentFile();
@@ -26,7 +26,9 @@
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 
@@ -44,13 +46,15 @@ public FileCollectionFingerprintSerializer(Interner<String> stringInterner) {
 
     @Override
     public FileCollectionFingerprint read(Decoder decoder) throws IOException {
-        Map<String, FileSystemLocationFingerprint> fingerprints = fingerprintMapSerializer.read(decoder);
-        if (fingerprints.isEmpty()) {
+        if (decoder.readBoolean()) {
             return FileCollectionFingerprint.EMPTY;
         }
         ImmutableMultimap<String, HashCode> rootHashes = readRootHashes(decoder);
         HashCode strategyConfigurationHash = hashCodeSerializer.read(decoder);
-        return new SerializableFileCollectionFingerprint(fingerprints, rootHashes, strategyConfigurationHash);
+        HashCode hash = decoder.readBoolean() ? hashCodeSerializer.read(decoder) : null;
+        // The per-file fingerprints are kept encoded until someone needs them
+        byte[] encodedFingerprints = decoder.readBinary();
+        return new SerializableFileCollectionFingerprint(encodedFingerprints, fingerprintMapSerializer, rootHashes, strategyConfigurationHash, hash);
     }
 
     private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder) throws IOException {
@@ -69,11 +73,35 @@ private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder) thro
 
     @Override
     public void write(Encoder encoder, FileCollectionFingerprint value) throws Exception {
-        fingerprintMapSerializer.write(encoder, value.getFingerprints());
-        if (!value.getFingerprints().isEmpty()) {
-            writeRootHashes(encoder, value.getRootHashes());
-            hashCodeSerializer.write(encoder, ((SerializableFileCollectionFingerprint) value).getStrategyConfigurationHash());
+        // Fingerprints reused from the previous execution can be written back without decoding them
+        byte[] encodedFingerprints = value instanceof SerializableFileCollectionFingerprint
+            ? ((SerializableFileCollectionFingerprint) value).getEncodedFingerprints()
+            : null;
+        if (encodedFingerprints == null) {
+            Map<String, FileSystemLocationFingerprint> fingerprints = value.getFingerprints();
+            if (fingerprints.isEmpty()) {
+                encoder.writeBoolean(true);
+                return;
+            }
+            encodedFingerprints = encodeFingerprints(fingerprints);
         }
+        encoder.writeBoolean(false);
+        writeRootHashes(encoder, value.getRootHashes());
+        hashCodeSerializer.write(encoder, ((SerializableFileCollectionFingerprint) value).getStrategyConfigurationHash());
+        HashCode hash = value.getKnownHash();
+        encoder.writeBoolean(hash != null);
+        if (hash != null) {
+            hashCodeSerializer.write(encoder, hash);
+        }
+        encoder.writeBinary(encodedFingerprints);
+    }
+
+    private byte[] encodeFingerprints(Map<String, FileSystemLocationFingerprint> fingerprints) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (KryoBackedEncoder encoder = new KryoBackedEncoder(output)) {
+            fingerprintMapSerializer.write(encoder, fingerprints);
+        }
+        return output.toByteArray();
     }
 
     private void writeRootHashes(Encoder encoder, ImmutableMultimap<String, HashCode> rootHashes) throws IOException {
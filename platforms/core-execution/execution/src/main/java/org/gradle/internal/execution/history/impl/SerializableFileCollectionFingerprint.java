@@ -21,24 +21,79 @@
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
 import org.gradle.internal.fingerprint.FingerprintingStrategy;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 
 public class SerializableFileCollectionFingerprint implements FileCollectionFingerprint {
 
-    private final Map<String, FileSystemLocationFingerprint> fingerprints;
+    private volatile Map<String, FileSystemLocationFingerprint> fingerprints;
+    private byte[] encodedFingerprints;
+    private final FingerprintMapSerializer fingerprintMapSerializer;
     private final ImmutableMultimap<String, HashCode> rootHashes;
     private final HashCode strategyConfigurationHash;
+    private final HashCode hash;
 
     public SerializableFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, ImmutableMultimap<String, HashCode> rootHashes, HashCode strategyConfigurationHash) {
+        this(fingerprints, rootHashes, strategyConfigurationHash, null);
+    }
+
+    public SerializableFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, ImmutableMultimap<String, HashCode> rootHashes, HashCode strategyConfigurationHash, @Nullable HashCode hash) {
         this.fingerprints = fingerprints;
+        this.encodedFingerprints = null;
+        this.fingerprintMapSerializer = null;
         this.rootHashes = rootHashes;
         this.strategyConfigurationHash = strategyConfigurationHash;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a fingerprint that only decodes its per-file fingerprints when they are first requested.
+     * Up-to-date checks that can decide based on the root hashes never pay for decoding them.
+     */
+    SerializableFileCollectionFingerprint(byte[] encodedFingerprints, FingerprintMapSerializer fingerprintMapSerializer, ImmutableMultimap<String, HashCode> rootHashes, HashCode strategyConfigurationHash, @Nullable HashCode hash) {
+        this.fingerprints = null;
+        this.encodedFingerprints = encodedFingerprints;
+        this.fingerprintMapSerializer = fingerprintMapSerializer;
+        this.rootHashes = rootHashes;
+        this.strategyConfigurationHash = strategyConfigurationHash;
+        this.hash = hash;
     }
 
     @Override
     public Map<String, FileSystemLocationFingerprint> getFingerprints() {
-        return fingerprints;
+        Map<String, FileSystemLocationFingerprint> result = fingerprints;
+        if (result == null) {
+            synchronized (this) {
+                result = fingerprints;
+                if (result == null) {
+                    result = decodeFingerprints();
+                    fingerprints = result;
+                    encodedFingerprints = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the per-file fingerprints in their encoded form, or {@code null} if they have been decoded already.
+     */
+    @Nullable
+    synchronized byte[] getEncodedFingerprints() {
+        return encodedFingerprints;
+    }
+
+    private Map<String, FileSystemLocationFingerprint> decodeFingerprints() {
+        try (KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(encodedFingerprints))) {
+            return fingerprintMapSerializer.read(decoder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
@@ -51,6 +106,12 @@ public boolean wasCreatedWithStrategy(FingerprintingStrategy strategy) {
         return strategy.getConfigurationHash().equals(strategyConfigurationHash);
     }
 
+    @Nullable
+    @Override
+    public HashCode getKnownHash() {
+        return hash;
+    }
+
     public HashCode getStrategyConfigurationHash() {
         return strategyConfigurationHash;
     }
@@ -18,6 +18,7 @@
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
 import org.gradle.internal.execution.InputFingerprinter;
 import org.gradle.internal.execution.UnitOfWork;
 import org.gradle.internal.execution.history.BeforeExecutionState;
@@ -25,6 +26,7 @@
 import org.gradle.internal.execution.history.OverlappingOutputs;
 import org.gradle.internal.execution.history.PreviousExecutionState;
 import org.gradle.internal.execution.history.impl.DefaultBeforeExecutionState;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
 import org.gradle.internal.operations.BuildOperationDescriptor;
@@ -38,6 +40,7 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Map;
 import java.util.Optional;
 
 public abstract class AbstractCaptureStateBeforeExecutionStep<C extends PreviousExecutionContext, R extends CachingResult> extends BuildOperationStep<C, R> {
@@ -72,7 +75,7 @@ private BeforeExecutionState captureExecutionState(UnitOfWork work, PreviousExec
                 OverlappingOutputs overlappingOutputs = detectOverlappingOutputs(work, context, unfilteredOutputSnapshots);
 
                 BeforeExecutionState executionState = captureExecutionStateWithOutputs(work, context, unfilteredOutputSnapshots, overlappingOutputs);
-                operationContext.setResult(Operation.Result.INSTANCE);
+                operationContext.setResult(createOperationResult(context, executionState));
                 return executionState;
             },
             BuildOperationDescriptor
@@ -124,6 +127,40 @@ private BeforeExecutionState captureExecutionStateWithOutputs(UnitOfWork work, P
         );
     }
 
+    private static Operation.Result createOperationResult(PreviousExecutionContext context, BeforeExecutionState executionState) {
+        ImmutableSortedMap<String, ? extends FileCollectionFingerprint> previousInputFileFingerprints = context.getPreviousExecutionState()
+            .map(ExecutionInputState::getInputFileProperties)
+            .orElse(ImmutableSortedMap.of());
+        int unchangedInputFileProperties = 0;
+        for (Map.Entry<String, CurrentFileCollectionFingerprint> entry : executionState.getInputFileProperties().entrySet()) {
+            FileCollectionFingerprint previousFingerprint = previousInputFileFingerprints.get(entry.getKey());
+            if (previousFingerprint != null && Iterables.elementsEqual(previousFingerprint.getRootHashes().entries(), entry.getValue().getRootHashes().entries())) {
+                unchangedInputFileProperties++;
+            }
+        }
+        return new OperationResult(executionState.getInputFileProperties().size(), unchangedInputFileProperties);
+    }
+
+    private static class OperationResult implements Operation.Result {
+        private final int inputFilePropertyCount;
+        private final int unchangedInputFilePropertyCount;
+
+        public OperationResult(int inputFilePropertyCount, int unchangedInputFilePropertyCount) {
+            this.inputFilePropertyCount = inputFilePropertyCount;
+            this.unchangedInputFilePropertyCount = unchangedInputFilePropertyCount;
+        }
+
+        @Override
+        public int getInputFilePropertyCount() {
+            return inputFilePropertyCount;
+        }
+
+        @Override
+        public int getUnchangedInputFilePropertyCount() {
+            return unchangedInputFilePropertyCount;
+        }
+    }
+
     private static class ImplementationsBuilder implements UnitOfWork.ImplementationVisitor {
         private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
         private ImplementationSnapshot implementation;
@@ -169,8 +206,17 @@ interface Details {
         }
 
         interface Result {
-            Result INSTANCE = new Result() {
-            };
+            /**
+             * The number of input file properties of the work.
+             */
+            int getInputFilePropertyCount();
+
+            /**
+             * The number of input file properties with the same root hashes as in the previous execution.
+             *
+             * These properties are up-to-date without comparing, or even loading, their previous file fingerprints.
+             */
+            int getUnchangedInputFilePropertyCount();
         }
     }
 }
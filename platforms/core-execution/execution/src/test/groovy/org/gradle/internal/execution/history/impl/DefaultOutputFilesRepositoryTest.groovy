@@ -69,6 +69,26 @@ class DefaultOutputFilesRepositoryTest extends Specification {
         !repository.isGeneratedByGradle(file('build/not-existing'))
     }
 
+    def "does not write outputs again when they are already recorded"() {
+        def outputFiles = [
+            tmpDir.createDir('build/outputs/directory'),
+            tmpDir.createFile('build/file'),
+        ]
+        def cache = Spy(TestInMemoryIndexedCache, constructorArgs: [BaseSerializerFactory.BOOLEAN_SERIALIZER])
+        def repository = new DefaultOutputFilesRepository(Stub(PersistentCache) {
+            createIndexedCache(_) >> cache
+        }, inMemoryCacheDecoratorFactory)
+        repository.recordOutputs(outputFiles.collect { snapshot(it) })
+
+        when:
+        repository.recordOutputs(outputFiles.collect { snapshot(it) })
+
+        then:
+        0 * cache.put(_, _)
+        repository.isGeneratedByGradle(file('build/outputs/directory'))
+        repository.isGeneratedByGradle(file('build/file'))
+    }
+
     private File file(String path) {
         tmpDir.file(path).absoluteFile
     }
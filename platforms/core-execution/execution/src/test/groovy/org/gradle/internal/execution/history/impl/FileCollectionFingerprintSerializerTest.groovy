@@ -93,4 +93,45 @@ class FileCollectionFingerprintSerializerTest extends SerializerSpec {
         out.fingerprints.keySet() as List == ["/3", "/2", "/1"]
         out.rootHashes.keySet() as List == ["/3", "/2", "/1"]
     }
+
+    def "decodes file fingerprints only when requested"() {
+        def rootHashes = ImmutableMultimap.of("/1", TestHashCodes.hashCodeFrom(1234))
+
+        when:
+        def out = serialize(new SerializableFileCollectionFingerprint(
+            "/1": new DefaultFileSystemLocationFingerprint('1', FileType.RegularFile, TestHashCodes.hashCodeFrom(1234)),
+            rootHashes,
+            TestHashCodes.hashCodeFrom(5432)
+        ), serializer)
+
+        then:
+        out.rootHashes == rootHashes
+        out.@fingerprints == null
+
+        when:
+        def fingerprints = out.fingerprints
+
+        then:
+        fingerprints.keySet() as List == ["/1"]
+        fingerprints["/1"].normalizedContentHash == TestHashCodes.hashCodeFrom(1234)
+        out.@encodedFingerprints == null
+    }
+
+    def "writes undecoded file fingerprints back without decoding them"() {
+        def hash = TestHashCodes.hashCodeFrom(9876)
+        def read = serialize(new SerializableFileCollectionFingerprint(
+            "/1": new DefaultFileSystemLocationFingerprint('1', FileType.RegularFile, TestHashCodes.hashCodeFrom(1234)),
+            ImmutableMultimap.of("/1", TestHashCodes.hashCodeFrom(1234)),
+            TestHashCodes.hashCodeFrom(5432),
+            hash
+        ), serializer)
+
+        when:
+        def out = serialize(read, serializer)
+
+        then:
+        read.@fingerprints == null
+        out.knownHash == hash
+        out.fingerprints["/1"].normalizedContentHash == TestHashCodes.hashCodeFrom(1234)
+    }
 }
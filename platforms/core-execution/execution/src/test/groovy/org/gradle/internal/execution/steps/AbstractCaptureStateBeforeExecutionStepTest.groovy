@@ -155,7 +155,10 @@ abstract class AbstractCaptureStateBeforeExecutionStepTest<C extends PreviousExe
 
     void assertOperation(Throwable expectedFailure = null) {
         if (expectedFailure == null) {
-            assertSuccessfulOperation(CaptureIncrementalStateBeforeExecutionStep.Operation, "Snapshot inputs and outputs before executing job ':test'", CaptureIncrementalStateBeforeExecutionStep.Operation.Result.INSTANCE)
+            withOnlyOperation(CaptureIncrementalStateBeforeExecutionStep.Operation) {
+                assert it.descriptor.displayName == "Snapshot inputs and outputs before executing job ':test'"
+                assert it.result instanceof CaptureIncrementalStateBeforeExecutionStep.Operation.Result
+            }
         } else {
             assertFailedOperation(CaptureIncrementalStateBeforeExecutionStep.Operation, "Snapshot inputs and outputs before executing job ':test'", expectedFailure)
         }
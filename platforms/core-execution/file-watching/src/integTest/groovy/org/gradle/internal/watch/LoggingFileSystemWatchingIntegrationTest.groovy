@@ -44,13 +44,13 @@ class LoggingFileSystemWatchingIntegrationTest extends AbstractFileSystemWatchin
         result.output =~ /VFS> Statistics since last build:/
         result.output =~ /VFS> > Stat: Executed stat\(\) x 0. getUnixMode\(\) x 0/
         result.output =~ /VFS> > FileHasher: Hashed 0 files \(0 bytes\)/
-        result.output =~ /VFS> > DirectorySnapshotter: Snapshot 0 directory hierarchies \(visited 0 directories, 0 files and 0 failed files\)/
+        result.output =~ /VFS> > DirectorySnapshotter: Snapshot 0 directory hierarchies \(visited 0 directories, 0 files and 0 failed files; traversal took 0 ms, hashing took 0 ms\)/
         result.output =~ /Received \d+ file system events during the current build while watching \d+ locations/
         result.output =~ /Virtual file system retains information about \d+ files, \d+ directories and \d+ missing files until next build/
         result.output =~ /VFS> Statistics during current build:/
         result.output =~ /VFS> > Stat: Executed stat\(\) x .*. getUnixMode\(\) x .*/
         result.output =~ /VFS> > FileHasher: Hashed .* files \(.* bytes\)/
-        result.output =~ /VFS> > DirectorySnapshotter: Snapshot .* directory hierarchies \(visited .* directories, .* files and .* failed files\)/
+        result.output =~ /VFS> > DirectorySnapshotter: Snapshot .* directory hierarchies \(visited .* directories, .* files and .* failed files; traversal took .* ms, hashing took .* ms\)/
 
         when:
         withWatchFs().run("assemble", "-D${StartParameterBuildOptions.VfsVerboseLoggingOption.GRADLE_PROPERTY}=true")
@@ -100,6 +100,13 @@ enum Type {
     @Override
     void close() throws IOException;
 
+    /**
+     * Close the watcher registry. Stops watching and handles all the changes received until then before returning.
+     *
+     * The change handler must not be blocked by the caller, since it is invoked on a different thread.
+     */
+    void closeAfterHandlingPendingChanges() throws IOException;
+
     interface FileWatchingStatistics {
         Optional<Throwable> getErrorWhileReceivingFileChanges();
         boolean isUnknownEventEncountered();
@@ -220,10 +220,7 @@ public void setDebugLoggingEnabled(boolean debugLoggingEnabled) {
     public void close() throws IOException {
         stopping = true;
         try {
-            watcher.shutdown();
-            if (!watcher.awaitTermination(5, TimeUnit.SECONDS)) {
-                throw new RuntimeException("Watcher did not terminate within 5 seconds");
-            }
+            shutdownWatcher();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new InterruptedIOException("Awaiting termination of watcher was interrupted");
@@ -233,6 +230,32 @@ public void close() throws IOException {
         }
     }
 
+    @Override
+    public void closeAfterHandlingPendingChanges() throws IOException {
+        try {
+            shutdownWatcher();
+            // The consumer thread finishes once it handled the termination event queued after all other events
+            eventConsumerThread.join(TimeUnit.SECONDS.toMillis(5));
+            if (eventConsumerThread.isAlive()) {
+                throw new RuntimeException("Pending file system events were not handled within 5 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Awaiting handling of pending file system events was interrupted");
+        } finally {
+            stopping = true;
+            consumeEvents = false;
+            eventConsumerThread.interrupt();
+        }
+    }
+
+    private void shutdownWatcher() throws InterruptedException {
+        watcher.shutdown();
+        if (!watcher.awaitTermination(5, TimeUnit.SECONDS)) {
+            throw new RuntimeException("Watcher did not terminate within 5 seconds");
+        }
+    }
+
     private static class MutableFileWatchingStatistics {
         private boolean unknownEventEncountered;
         private int numberOfReceivedEvents;
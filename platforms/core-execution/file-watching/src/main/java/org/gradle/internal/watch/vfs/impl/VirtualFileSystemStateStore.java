@@ -0,0 +1,367 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.FileContentHashMode;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.SnapshotHierarchy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persists the retained state of the virtual file system across daemon restarts.
+ *
+ * <p>When a daemon shuts down while watching the file system, the retained snapshots and the registered
+ * watchable hierarchies are written to disk. The next daemon loads them when it starts watching and validates
+ * each entry using file metadata only: regular files by modification time, length and file key, missing files
+ * by their absence and directories by modification time, file key and the validity of all of their children.
+ * Content hashes are never recomputed. If a directory is no longer valid, its valid descendants are still restored.</p>
+ *
+ * <p>Like {@code FileTimeStampInspector}, a modification time is only trusted when it is before the time the state was persisted,
+ * within file system resolution. Otherwise the file or directory could have changed after persisting the state without its
+ * modification time changing, and its snapshot is dropped.</p>
+ *
+ * <p>Persisting the state is opt-in via the {@value #PERSIST_PROPERTY} system property.</p>
+ */
+public class VirtualFileSystemStateStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualFileSystemStateStore.class);
+
+    public static final String PERSIST_PROPERTY = "org.gradle.vfs.persist";
+    private static final String STATE_FILE_NAME = "vfs-state.bin";
+
+    private static final int MAGIC = 0x56465353;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte REGULAR_FILE = 0;
+    private static final byte MISSING = 1;
+    private static final byte DIRECTORY = 2;
+
+    private static final LinkOption[] NO_FOLLOW = {LinkOption.NOFOLLOW_LINKS};
+    private static final LinkOption[] FOLLOW = {};
+
+    private final File stateFile;
+
+    public VirtualFileSystemStateStore(File stateDir) {
+        this.stateFile = new File(stateDir, STATE_FILE_NAME);
+    }
+
+    /**
+     * Creates a store in the given directory when persisting the VFS state has been enabled, otherwise returns {@code null}.
+     */
+    @Nullable
+    public static VirtualFileSystemStateStore fromSystemProperty(File stateDir) {
+        return Boolean.getBoolean(PERSIST_PROPERTY)
+            ? new VirtualFileSystemStateStore(stateDir)
+            : null;
+    }
+
+    /**
+     * Writes the root snapshots of the given hierarchy, together with the watchable hierarchies, replacing any previously persisted state.
+     *
+     * The modification times of directories are read when saving, so all file system events received so far must have been applied to the hierarchy.
+     */
+    public void save(SnapshotHierarchy root, Collection<File> watchableHierarchies) {
+        List<FileSystemLocationSnapshot> rootSnapshots = root.rootSnapshots().collect(ImmutableList.toImmutableList());
+        Path tempFile = null;
+        try {
+            Path stateDir = Files.createDirectories(stateFile.getParentFile().toPath());
+            // Daemons sharing the state directory may persist their state concurrently
+            tempFile = Files.createTempFile(stateDir, STATE_FILE_NAME, ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(FileContentHashMode.current().getVersion());
+                output.writeInt(watchableHierarchies.size());
+                for (File watchableHierarchy : watchableHierarchies) {
+                    output.writeUTF(watchableHierarchy.getAbsolutePath());
+                }
+                output.writeInt(rootSnapshots.size());
+                for (FileSystemLocationSnapshot snapshot : rootSnapshots) {
+                    output.writeUTF(snapshot.getAbsolutePath());
+                    writeSnapshot(output, snapshot);
+                }
+            }
+            Files.move(tempFile, stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Persisted {} VFS root snapshots to {}", rootSnapshots.size(), stateFile);
+        } catch (IOException e) {
+            LOGGER.info("Unable to persist VFS state to {}", stateFile, e);
+            if (tempFile != null) {
+                deleteQuietly(tempFile.toFile());
+            }
+        }
+    }
+
+    /**
+     * Loads and validates the persisted state, if any.
+     *
+     * The state file is consumed by loading it, so it is only used by a single daemon.
+     */
+    @Nullable
+    public PersistedState load() {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile.toPath())))) {
+            long persistedTimestamp = timestampOf(stateFile);
+            if (input.readInt() != MAGIC
+                || input.readInt() != FORMAT_VERSION
+                || !input.readUTF().equals(FileContentHashMode.current().getVersion())) {
+                LOGGER.info("Ignoring incompatible VFS state in {}", stateFile);
+                return null;
+            }
+            int hierarchyCount = input.readInt();
+            List<File> watchableHierarchies = new ArrayList<>(hierarchyCount);
+            for (int i = 0; i < hierarchyCount; i++) {
+                watchableHierarchies.add(new File(input.readUTF()));
+            }
+            int snapshotCount = input.readInt();
+            List<FileSystemLocationSnapshot> validSnapshots = new ArrayList<>();
+            for (int i = 0; i < snapshotCount; i++) {
+                String absolutePath = input.readUTF();
+                List<FileSystemLocationSnapshot> salvaged = new ArrayList<>();
+                FileSystemLocationSnapshot snapshot = readSnapshot(input, absolutePath, persistedTimestamp, salvaged);
+                if (snapshot != null) {
+                    validSnapshots.add(snapshot);
+                } else {
+                    validSnapshots.addAll(salvaged);
+                }
+            }
+            LOGGER.info("Restored {} of {} persisted VFS root snapshots from {}", validSnapshots.size(), snapshotCount, stateFile);
+            return new PersistedState(watchableHierarchies, validSnapshots);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Unable to load VFS state from {}", stateFile, e);
+            return null;
+        } finally {
+            deleteQuietly(stateFile);
+        }
+    }
+
+    private static void writeSnapshot(DataOutputStream output, FileSystemLocationSnapshot snapshot) throws IOException {
+        output.writeByte(snapshot.getAccessType().ordinal());
+        switch (snapshot.getType()) {
+            case RegularFile:
+                FileMetadata metadata = ((RegularFileSnapshot) snapshot).getMetadata();
+                output.writeByte(REGULAR_FILE);
+                writeHash(output, snapshot.getHash());
+                output.writeLong(metadata.getLastModified());
+                output.writeLong(metadata.getLength());
+                output.writeUTF(fileKeyOf(snapshot));
+                break;
+            case Missing:
+                output.writeByte(MISSING);
+                break;
+            case Directory:
+                List<FileSystemLocationSnapshot> children = ((DirectorySnapshot) snapshot).getChildren();
+                BasicFileAttributes attributes = readAttributes(snapshot.getAbsolutePath(), snapshot.getAccessType());
+                output.writeByte(DIRECTORY);
+                writeHash(output, snapshot.getHash());
+                // A directory which can't be read anymore is written with an impossible timestamp, so it is invalid when loading
+                output.writeLong(attributes == null ? Long.MIN_VALUE : attributes.lastModifiedTime().toMillis());
+                output.writeUTF(fileKeyOf(attributes));
+                output.writeInt(children.size());
+                for (FileSystemLocationSnapshot child : children) {
+                    output.writeUTF(child.getName());
+                    writeSnapshot(output, child);
+                }
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * Reads a snapshot and validates it against the file system.
+     *
+     * @return the snapshot if it is still valid, otherwise {@code null}, after adding the still valid descendants to {@code salvaged}.
+     */
+    @Nullable
+    private static FileSystemLocationSnapshot readSnapshot(DataInputStream input, String absolutePath, long persistedTimestamp, List<FileSystemLocationSnapshot> salvaged) throws IOException {
+        String name = fileNameOf(absolutePath);
+        AccessType accessType = AccessType.values()[input.readByte()];
+        byte type = input.readByte();
+        switch (type) {
+            case REGULAR_FILE: {
+                HashCode hash = readHash(input);
+                long lastModified = input.readLong();
+                long length = input.readLong();
+                String fileKey = input.readUTF();
+                BasicFileAttributes attributes = readAttributes(absolutePath, accessType);
+                boolean valid = attributes != null
+                    && attributes.isRegularFile()
+                    && attributes.lastModifiedTime().toMillis() == lastModified
+                    && lastModified < persistedTimestamp
+                    && attributes.size() == length
+                    && fileKey.equals(fileKeyOf(attributes));
+                return valid
+                    ? new RegularFileSnapshot(absolutePath, name, hash, DefaultFileMetadata.file(lastModified, length, accessType))
+                    : null;
+            }
+            case MISSING:
+                return isMissing(absolutePath, accessType)
+                    ? new MissingFileSnapshot(absolutePath, name, accessType)
+                    : null;
+            case DIRECTORY: {
+                HashCode hash = readHash(input);
+                long lastModified = input.readLong();
+                String fileKey = input.readUTF();
+                int childCount = input.readInt();
+                BasicFileAttributes attributes = readAttributes(absolutePath, accessType);
+                boolean valid = attributes != null
+                    && attributes.isDirectory()
+                    && attributes.lastModifiedTime().toMillis() == lastModified
+                    && lastModified < persistedTimestamp
+                    && fileKey.equals(fileKeyOf(attributes));
+                List<FileSystemLocationSnapshot> children = new ArrayList<>(childCount);
+                List<FileSystemLocationSnapshot> salvagedFromChildren = new ArrayList<>();
+                for (int i = 0; i < childCount; i++) {
+                    String childPath = childPath(absolutePath, input.readUTF());
+                    FileSystemLocationSnapshot child = readSnapshot(input, childPath, persistedTimestamp, salvagedFromChildren);
+                    if (child != null) {
+                        children.add(child);
+                    } else {
+                        valid = false;
+                    }
+                }
+                if (valid) {
+                    return new DirectorySnapshot(absolutePath, name, accessType, hash, children);
+                }
+                salvaged.addAll(children);
+                salvaged.addAll(salvagedFromChildren);
+                return null;
+            }
+            default:
+                throw new IOException("Unknown snapshot type " + type);
+        }
+    }
+
+    private static boolean isMissing(String absolutePath, AccessType accessType) {
+        Path path = Paths.get(absolutePath);
+        if (accessType == AccessType.VIA_SYMLINK) {
+            // A broken symlink
+            return Files.isSymbolicLink(path) && !Files.exists(path);
+        }
+        return !Files.exists(path, NO_FOLLOW);
+    }
+
+    @Nullable
+    private static BasicFileAttributes readAttributes(String absolutePath, AccessType accessType) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(absolutePath), BasicFileAttributes.class, accessType == AccessType.VIA_SYMLINK ? FOLLOW : NO_FOLLOW);
+            return attributes.isSymbolicLink() ? null : attributes;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to read attributes of {}", absolutePath, e);
+            return null;
+        }
+    }
+
+    private static String fileKeyOf(FileSystemLocationSnapshot snapshot) {
+        return fileKeyOf(readAttributes(snapshot.getAbsolutePath(), snapshot.getAccessType()));
+    }
+
+    private static String fileKeyOf(@Nullable BasicFileAttributes attributes) {
+        Object fileKey = attributes == null ? null : attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    /**
+     * Returns the modification time of the given file at the lowest precision available, as {@code File.lastModified()} and
+     * {@code Files.getLastModifiedTime()} may differ in precision on some JDK 8 versions.
+     */
+    private static long timestampOf(File file) throws IOException {
+        return Math.min(file.lastModified(), Files.getLastModifiedTime(file.toPath()).toMillis());
+    }
+
+    private static void writeHash(DataOutputStream output, HashCode hash) throws IOException {
+        byte[] bytes = hash.toByteArray();
+        output.writeByte(bytes.length);
+        output.write(bytes);
+    }
+
+    private static HashCode readHash(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readUnsignedByte()];
+        input.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    private static String childPath(String parentPath, String childName) {
+        return parentPath.endsWith(File.separator)
+            ? parentPath + childName
+            : parentPath + File.separatorChar + childName;
+    }
+
+    private static String fileNameOf(String absolutePath) {
+        String name = new File(absolutePath).getName();
+        return name.isEmpty() ? absolutePath : name;
+    }
+
+    private static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Unable to delete {}", file, e);
+        }
+    }
+
+    public static class PersistedState {
+        private final List<File> watchableHierarchies;
+        private final List<FileSystemLocationSnapshot> snapshots;
+
+        public PersistedState(List<File> watchableHierarchies, List<FileSystemLocationSnapshot> snapshots) {
+            this.watchableHierarchies = watchableHierarchies;
+            this.snapshots = snapshots;
+        }
+
+        public List<File> getWatchableHierarchies() {
+            return watchableHierarchies;
+        }
+
+        /**
+         * The snapshots which are still valid.
+         */
+        public List<FileSystemLocationSnapshot> getSnapshots() {
+            return snapshots;
+        }
+    }
+}
@@ -24,6 +24,7 @@
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationRunner;
 import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.FileSystemNode;
 import org.gradle.internal.snapshot.SnapshotHierarchy;
 import org.gradle.internal.vfs.impl.AbstractVirtualFileSystem;
@@ -67,6 +68,8 @@ public class WatchingVirtualFileSystem extends AbstractVirtualFileSystem impleme
     private final FileWatchingFilter locationsWrittenByCurrentBuild;
     private final WatchableFileSystemDetector watchableFileSystemDetector;
     private final FileChangeListeners fileChangeListeners;
+    @Nullable
+    private final VirtualFileSystemStateStore stateStore;
     private final List<File> unsupportedFileSystems = new ArrayList<>();
     private Logger warningLogger = LOGGER;
 
@@ -75,6 +78,12 @@ public class WatchingVirtualFileSystem extends AbstractVirtualFileSystem impleme
      */
     private final Set<File> watchableHierarchiesRegisteredEarly = new LinkedHashSet<>();
 
+    /**
+     * All watchable hierarchies registered with this daemon, persisted together with the VFS state.
+     */
+    private final Set<File> registeredWatchableHierarchies = new LinkedHashSet<>();
+    private boolean persistedStateLoaded;
+
     private FileWatcherRegistry watchRegistry;
     private Exception reasonForNotWatchingFiles;
     private boolean stateInvalidatedAtStartOfBuild;
@@ -86,6 +95,18 @@ public WatchingVirtualFileSystem(
         FileWatchingFilter locationsWrittenByCurrentBuild,
         WatchableFileSystemDetector watchableFileSystemDetector,
         FileChangeListeners fileChangeListeners
+    ) {
+        this(watcherRegistryFactory, root, daemonDocumentationIndex, locationsWrittenByCurrentBuild, watchableFileSystemDetector, fileChangeListeners, null);
+    }
+
+    public WatchingVirtualFileSystem(
+        FileWatcherRegistryFactory watcherRegistryFactory,
+        SnapshotHierarchy root,
+        DaemonDocumentationIndex daemonDocumentationIndex,
+        FileWatchingFilter locationsWrittenByCurrentBuild,
+        WatchableFileSystemDetector watchableFileSystemDetector,
+        FileChangeListeners fileChangeListeners,
+        @Nullable VirtualFileSystemStateStore stateStore
     ) {
         super(root);
         this.watcherRegistryFactory = watcherRegistryFactory;
@@ -93,6 +114,7 @@ public WatchingVirtualFileSystem(
         this.locationsWrittenByCurrentBuild = locationsWrittenByCurrentBuild;
         this.watchableFileSystemDetector = watchableFileSystemDetector;
         this.fileChangeListeners = fileChangeListeners;
+        this.stateStore = stateStore;
     }
 
     @Override
@@ -205,6 +227,7 @@ public BuildOperationDescriptor.Builder description() {
     @Override
     public void registerWatchableHierarchy(File watchableHierarchy) {
         updateRootUnderLock(currentRoot -> {
+            registeredWatchableHierarchies.add(watchableHierarchy);
             if (watchRegistry == null) {
                 watchableHierarchiesRegisteredEarly.add(watchableHierarchy);
                 return currentRoot;
@@ -316,7 +339,7 @@ private SnapshotHierarchy startWatching(SnapshotHierarchy currentRoot, WatchMode
             SnapshotHierarchy newRoot = watchRegistry.updateVfsOnBuildStarted(currentRoot.empty(), watchMode, unsupportedFileSystems);
             watchableHierarchiesRegisteredEarly.forEach(watchableHierarchy -> watchRegistry.registerWatchableHierarchy(watchableHierarchy, newRoot));
             watchableHierarchiesRegisteredEarly.clear();
-            return newRoot;
+            return restorePersistedState(newRoot, watchMode, unsupportedFileSystems);
         } catch (Exception ex) {
             logWatchingError(ex, FILE_WATCHING_ERROR_MESSAGE_DURING_BUILD, null);
             closeUnderLock();
@@ -324,6 +347,38 @@ private SnapshotHierarchy startWatching(SnapshotHierarchy currentRoot, WatchMode
         }
     }
 
+    /**
+     * Restores the VFS state persisted by a previous daemon, once per daemon.
+     *
+     * The watchable hierarchies are registered before storing the snapshots, so the snapshots are watched like any other snapshot added to the VFS.
+     */
+    @CheckReturnValue
+    private SnapshotHierarchy restorePersistedState(SnapshotHierarchy currentRoot, WatchMode watchMode, List<File> unsupportedFileSystems) {
+        if (stateStore == null || persistedStateLoaded) {
+            return currentRoot;
+        }
+        persistedStateLoaded = true;
+        VirtualFileSystemStateStore.PersistedState persistedState = stateStore.load();
+        if (persistedState == null) {
+            return currentRoot;
+        }
+        for (File watchableHierarchy : persistedState.getWatchableHierarchies()) {
+            if (registeredWatchableHierarchies.add(watchableHierarchy)) {
+                watchRegistry.registerWatchableHierarchy(watchableHierarchy, currentRoot);
+            }
+        }
+        SnapshotHierarchy newRoot = updateNotifyingListeners(diffListener -> {
+            SnapshotHierarchy result = currentRoot;
+            for (FileSystemLocationSnapshot snapshot : persistedState.getSnapshots()) {
+                result = result.store(snapshot.getAbsolutePath(), snapshot, diffListener);
+            }
+            return result;
+        });
+        return watchRegistry == null
+            ? newRoot
+            : watchRegistry.updateVfsOnBuildStarted(newRoot, watchMode, unsupportedFileSystems);
+    }
+
     @Override
     public boolean isWatchingAnyLocations() {
         FileWatcherRegistry watchRegistry = this.watchRegistry;
@@ -505,7 +560,27 @@ private boolean hasDroppedStateBecauseOfErrorsReceivedWhileWatching(FileWatcherR
     @Override
     public void close() {
         LOGGER.debug("Closing VFS, dropping state");
+        FileWatcherRegistry watchRegistryToPersist = stateStore == null ? null : watchRegistry;
+        boolean handledPendingChanges = false;
+        if (watchRegistryToPersist != null) {
+            // Handling the changes requires the lock, so don't hold it while waiting for them
+            try {
+                watchRegistryToPersist.closeAfterHandlingPendingChanges();
+                handledPendingChanges = true;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.info("Unable to handle pending file system changes, not persisting VFS state", e);
+            }
+        }
+        boolean persistState = handledPendingChanges;
         updateRootUnderLock(currentRoot -> {
+            if (watchRegistryToPersist != null && watchRegistry == watchRegistryToPersist) {
+                // Only a watched VFS which handled all the changes is known to be up-to-date
+                if (persistState) {
+                    stateStore.save(currentRoot, registeredWatchableHierarchies);
+                }
+                // Already closed
+                watchRegistry = null;
+            }
             closeUnderLock();
             return currentRoot.empty();
         });
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.registry.impl
+
+import net.rubygrapefruit.platform.file.FileWatchEvent
+import net.rubygrapefruit.platform.file.FileWatcher
+import net.rubygrapefruit.platform.internal.jni.AbstractNativeFileEventFunctions
+import org.gradle.internal.watch.registry.FileWatcherRegistry
+import org.gradle.internal.watch.registry.FileWatcherUpdater
+import spock.lang.Specification
+
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class DefaultFileWatcherRegistryTest extends Specification {
+    def fileEventFunctions = Mock(AbstractNativeFileEventFunctions)
+    def watcher = Mock(FileWatcher)
+    def changeHandler = Mock(FileWatcherRegistry.ChangeHandler)
+    def fileWatcherUpdater = Mock(FileWatcherUpdater)
+    def fileEvents = new LinkedBlockingQueue<FileWatchEvent>()
+
+    def "handles queued events before closing after handling pending changes"() {
+        def handledChanges = new CopyOnWriteArrayList<Path>()
+        changeHandler.handleChange(FileWatcherRegistry.Type.MODIFIED, _ as Path) >> { type, Path path ->
+            // Slow handling keeps the events queued while closing
+            Thread.sleep(100)
+            handledChanges << path
+        }
+        watcher.shutdown() >> {
+            // The watcher queues the events it still received and then a termination event
+            fileEvents.put(changeEvent("/second"))
+            fileEvents.put(terminationEvent())
+        }
+        watcher.awaitTermination(5, TimeUnit.SECONDS) >> true
+        def registry = new DefaultFileWatcherRegistry(fileEventFunctions, watcher, changeHandler, fileWatcherUpdater, fileEvents)
+        fileEvents.put(changeEvent("/first"))
+
+        when:
+        registry.closeAfterHandlingPendingChanges()
+        def changesHandledWhenClosed = handledChanges.toList()
+
+        then:
+        changesHandledWhenClosed == [Paths.get("/first"), Paths.get("/second")]
+    }
+
+    private FileWatchEvent changeEvent(String path) {
+        Stub(FileWatchEvent) {
+            handleEvent(_) >> { FileWatchEvent.Handler handler -> handler.handleChangeEvent(FileWatchEvent.ChangeType.MODIFIED, path) }
+        }
+    }
+
+    private FileWatchEvent terminationEvent() {
+        Stub(FileWatchEvent) {
+            handleEvent(_) >> { FileWatchEvent.Handler handler -> handler.handleTerminated() }
+        }
+    }
+}
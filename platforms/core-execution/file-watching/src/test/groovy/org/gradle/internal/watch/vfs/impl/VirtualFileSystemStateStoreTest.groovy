@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl
+
+import org.gradle.internal.file.impl.DefaultFileMetadata
+import org.gradle.internal.hash.TestHashCodes
+import org.gradle.internal.snapshot.DirectorySnapshot
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.TestSnapshotFixture
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.internal.file.FileMetadata.AccessType.DIRECT
+
+class VirtualFileSystemStateStoreTest extends Specification implements TestSnapshotFixture {
+
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def store = new VirtualFileSystemStateStore(temporaryFolder.file("state"))
+
+    def "restores unchanged snapshots and watchable hierarchies"() {
+        def root = temporaryFolder.createDir("root")
+        def dir = root.createDir("dir")
+        def file = dir.createFile("file.txt") << "content"
+        def otherFile = root.createFile("other.txt") << "other"
+        def missingFile = root.file("missing.txt")
+        makeOlder(file, otherFile, dir)
+        def snapshots = [
+            directory(dir.absolutePath, [existingFile(file, 1)]),
+            existingFile(otherFile, 2),
+            missing(missingFile.absolutePath)
+        ]
+
+        when:
+        store.save(buildHierarchy(snapshots), [root])
+        def state = store.load()
+
+        then:
+        state.watchableHierarchies == [root]
+        normalize(state.snapshots) == normalize(snapshots)
+        temporaryFolder.file("state").list() as List == []
+    }
+
+    def "drops changed file and its ancestors but keeps valid siblings"() {
+        def root = temporaryFolder.createDir("root")
+        def dir = root.createDir("dir")
+        def changedFile = dir.createFile("changed.txt") << "content"
+        def subDir = dir.createDir("sub")
+        def unchangedFile = subDir.createFile("unchanged.txt") << "content"
+        def sibling = dir.createFile("sibling.txt") << "sibling"
+        makeOlder(changedFile, unchangedFile, sibling, subDir, dir)
+        def subDirSnapshot = directory(subDir.absolutePath, [existingFile(unchangedFile, 1)])
+        def siblingSnapshot = existingFile(sibling, 2)
+        def snapshots = [directory(dir.absolutePath, [existingFile(changedFile, 3), siblingSnapshot, subDirSnapshot])]
+        store.save(buildHierarchy(snapshots), [root])
+
+        when:
+        changedFile << "more content"
+        def state = store.load()
+
+        then:
+        normalize(state.snapshots) == normalize([siblingSnapshot, subDirSnapshot])
+    }
+
+    def "drops snapshots which have been modified right before persisting them"() {
+        def root = temporaryFolder.createDir("root")
+        def dir = root.createDir("dir")
+        def recentFile = dir.createFile("recent.txt") << "content"
+        def olderFile = dir.createFile("older.txt") << "content"
+        makeOlder(olderFile)
+        def olderFileSnapshot = existingFile(olderFile, 2)
+        store.save(buildHierarchy([directory(dir.absolutePath, [existingFile(recentFile, 1), olderFileSnapshot])]), [root])
+
+        when:
+        def state = store.load()
+
+        then:
+        normalize(state.snapshots) == normalize([olderFileSnapshot])
+    }
+
+    def "drops snapshots of files which have been created or removed"() {
+        def root = temporaryFolder.createDir("root")
+        def removedFile = root.createFile("removed.txt") << "content"
+        def createdFile = root.file("created.txt")
+        store.save(buildHierarchy([existingFile(removedFile, 1), missing(createdFile.absolutePath)]), [root])
+
+        when:
+        removedFile.delete()
+        createdFile << "content"
+        def state = store.load()
+
+        then:
+        state.snapshots.empty
+    }
+
+    def "state is consumed when loading"() {
+        def root = temporaryFolder.createDir("root")
+        store.save(buildHierarchy([existingFile(root.createFile("file.txt"), 1)]), [root])
+
+        expect:
+        store.load() != null
+        store.load() == null
+    }
+
+    def "ignores corrupt state"() {
+        temporaryFolder.file("state/vfs-state.bin") << "corrupt"
+
+        expect:
+        store.load() == null
+    }
+
+    private static void makeOlder(TestFile... files) {
+        files.each { it.makeOlder() }
+    }
+
+    private static FileSystemLocationSnapshot existingFile(TestFile file, long hash) {
+        new RegularFileSnapshot(file.absolutePath, file.name, TestHashCodes.hashCodeFrom(hash), DefaultFileMetadata.file(file.lastModified(), file.length(), DIRECT))
+    }
+
+    private static List<String> normalize(List<FileSystemLocationSnapshot> snapshots) {
+        snapshots.collect { describe(it) }.sort()
+    }
+
+    private static String describe(FileSystemLocationSnapshot snapshot) {
+        def description = "${snapshot.type} ${snapshot.absolutePath} ${snapshot.hash}"
+        if (snapshot instanceof DirectorySnapshot) {
+            description += snapshot.children.collect { describe(it) }
+        }
+        return description
+    }
+}
@@ -228,4 +228,96 @@ class WatchingVirtualFileSystemTest extends Specification {
         1 * watcherRegistry.close()
         0 * _
     }
+
+    def "restores the persisted state once per daemon"() {
+        def stateStore = Mock(VirtualFileSystemStateStore)
+        def persistingVirtualFileSystem = persistingVirtualFileSystem(stateStore)
+
+        when:
+        persistingVirtualFileSystem.afterBuildStarted(WatchMode.ENABLED, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner)
+        then:
+        1 * watcherRegistryFactory.createFileWatcherRegistry(_) >> watcherRegistry
+        1 * watcherRegistry.updateVfsOnBuildStarted(_, _, _) >> emptySnapshotHierarchy
+        1 * stateStore.load() >> null
+        1 * watcherRegistry.setDebugLoggingEnabled(false)
+        0 * _
+
+        when:
+        persistingVirtualFileSystem.afterBuildStarted(WatchMode.DISABLED, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner)
+        then:
+        1 * watcherRegistry.close()
+        0 * _
+
+        when:
+        persistingVirtualFileSystem.afterBuildStarted(WatchMode.ENABLED, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner)
+        then:
+        1 * watcherRegistryFactory.createFileWatcherRegistry(_) >> watcherRegistry
+        1 * watcherRegistry.updateVfsOnBuildStarted(_, _, _) >> emptySnapshotHierarchy
+        1 * watcherRegistry.setDebugLoggingEnabled(false)
+        0 * stateStore.load()
+        0 * _
+    }
+
+    def "persists the state on close after handling pending changes"() {
+        def stateStore = Mock(VirtualFileSystemStateStore)
+        def persistingVirtualFileSystem = persistingVirtualFileSystem(stateStore)
+        startWatching(persistingVirtualFileSystem, stateStore)
+
+        when:
+        persistingVirtualFileSystem.close()
+        then:
+        1 * watcherRegistry.closeAfterHandlingPendingChanges()
+        1 * stateStore.save(_, _)
+        0 * _
+    }
+
+    def "does not persist the state when pending changes could not be handled"() {
+        def stateStore = Mock(VirtualFileSystemStateStore)
+        def persistingVirtualFileSystem = persistingVirtualFileSystem(stateStore)
+        startWatching(persistingVirtualFileSystem, stateStore)
+
+        when:
+        persistingVirtualFileSystem.close()
+        then:
+        1 * watcherRegistry.closeAfterHandlingPendingChanges() >> { throw new IOException("Failed") }
+        0 * stateStore.save(_, _)
+    }
+
+    def "does not persist the state when the watcher stopped after an error while handling pending changes"() {
+        def stateStore = Mock(VirtualFileSystemStateStore)
+        def persistingVirtualFileSystem = persistingVirtualFileSystem(stateStore)
+        def changeHandler = startWatching(persistingVirtualFileSystem, stateStore)
+
+        when:
+        persistingVirtualFileSystem.close()
+        then:
+        1 * watcherRegistry.closeAfterHandlingPendingChanges() >> { changeHandler.stopWatchingAfterError() }
+        1 * watcherRegistry.close()
+        0 * stateStore.save(_, _)
+    }
+
+    private WatchingVirtualFileSystem persistingVirtualFileSystem(VirtualFileSystemStateStore stateStore) {
+        new WatchingVirtualFileSystem(
+            watcherRegistryFactory,
+            nonEmptySnapshotHierarchy,
+            daemonDocumentationIndex,
+            locationsUpdatedByCurrentBuild,
+            watchableFileSystemDetector,
+            fileChangeListeners,
+            stateStore
+        )
+    }
+
+    private FileWatcherRegistry.ChangeHandler startWatching(WatchingVirtualFileSystem virtualFileSystem, VirtualFileSystemStateStore stateStore) {
+        FileWatcherRegistry.ChangeHandler changeHandler = null
+        watcherRegistryFactory.createFileWatcherRegistry(_) >> { FileWatcherRegistry.ChangeHandler handler ->
+            changeHandler = handler
+            watcherRegistry
+        }
+        watcherRegistry.updateVfsOnBuildStarted(_, _, _) >> emptySnapshotHierarchy
+        stateStore.load() >> null
+        virtualFileSystem.afterBuildStarted(WatchMode.ENABLED, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner)
+        assert changeHandler != null
+        return changeHandler
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hashes content larger than a threshold as a tree: the content is split into fixed-size chunks which are hashed independently,
+ * and the resulting hash is the combination of the content length and the chunk hashes.
+ * <p>
+ * Chunks of a file are read with positional reads. When an executor is given, they are hashed in parallel on it,
+ * with the calling thread hashing chunks as well, so hashing a file from a task already running on the executor cannot starve.
+ * Without an executor, chunks are hashed sequentially on the calling thread.
+ * Streams are hashed chunk by chunk while they are read, so they produce the same hash as a file with the same content.
+ * We don't memory map the chunks, since mapped buffers cannot be released deterministically and keep the file locked on Windows.
+ */
+class ChunkedContentHasher {
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final HashCode SIGNATURE = Hashing.signature(ChunkedContentHasher.class);
+
+    private final HashFunction hashFunction;
+    private final long threshold;
+    private final Executor executor;
+
+    ChunkedContentHasher(HashFunction hashFunction, long threshold, @Nullable Executor executor) {
+        this.hashFunction = hashFunction;
+        this.threshold = threshold;
+        this.executor = executor;
+    }
+
+    boolean isEnabled() {
+        return threshold != Long.MAX_VALUE;
+    }
+
+    boolean isChunked(long length) {
+        return length > threshold;
+    }
+
+    HashCode hash(FileChannel channel, long length) {
+        int chunkCount = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        HashCode[] chunkHashes = new HashCode[chunkCount];
+        if (executor == null || chunkCount == 1) {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                chunkHashes[chunk] = hashChunk(channel, length, chunk);
+            }
+        } else {
+            hashChunksInParallel(channel, length, chunkHashes);
+        }
+        return combine(length, Arrays.asList(chunkHashes));
+    }
+
+    private void hashChunksInParallel(FileChannel channel, long length, HashCode[] chunkHashes) {
+        int chunkCount = chunkHashes.length;
+        AtomicInteger nextChunk = new AtomicInteger();
+        CountDownLatch remainingChunks = new CountDownLatch(chunkCount);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Runnable worker = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                try {
+                    if (failure.get() == null) {
+                        chunkHashes[chunk] = hashChunk(channel, length, chunk);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    remainingChunks.countDown();
+                }
+            }
+        };
+        int helpers = Math.min(chunkCount - 1, Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // The calling thread hashes the remaining chunks
+                break;
+            }
+        }
+        worker.run();
+        try {
+            remainingChunks.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while hashing file content."));
+        }
+        // Chunk hashing only throws unchecked exceptions
+        Throwable t = failure.get();
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw (RuntimeException) t;
+        }
+    }
+
+    private HashCode hashChunk(FileChannel channel, long length, int chunk) {
+        long offset = chunk * (long) CHUNK_SIZE;
+        return hashChunk(channel, offset, Math.min(CHUNK_SIZE, length - offset));
+    }
+
+    private HashCode hashChunk(FileChannel channel, long offset, long size) {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        // Access position and limit through Buffer, so code compiled by Java 9+ still runs on Java 8
+        Buffer bufferView = byteBuffer;
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        long position = offset;
+        long end = offset + size;
+        try {
+            while (position < end) {
+                bufferView.clear();
+                bufferView.limit((int) Math.min(buffer.length, end - position));
+                int nread = channel.read(byteBuffer, position);
+                if (nread < 0) {
+                    throw new IOException(String.format("Unexpected end of file at position %d, expected %d bytes.", position, end));
+                }
+                hasher.putBytes(buffer, 0, nread);
+                position += nread;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash();
+    }
+
+    private HashCode combine(long length, List<HashCode> chunkHashes) {
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        hasher.putHash(SIGNATURE);
+        hasher.putLong(length);
+        for (HashCode chunkHash : chunkHashes) {
+            hasher.putHash(chunkHash);
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Returns a hasher that chunks content as it is fed.
+     */
+    StreamingChunkHasher newStreamingHasher() {
+        return new StreamingChunkHasher();
+    }
+
+    class StreamingChunkHasher {
+        private final List<HashCode> chunkHashes = new ArrayList<HashCode>();
+        private PrimitiveHasher chunkHasher = hashFunction.newPrimitiveHasher();
+        private int bytesInChunk;
+        private long length;
+
+        void putBytes(byte[] bytes, int off, int len) {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                int count = Math.min(remaining, CHUNK_SIZE - bytesInChunk);
+                chunkHasher.putBytes(bytes, offset, count);
+                bytesInChunk += count;
+                offset += count;
+                remaining -= count;
+                if (bytesInChunk == CHUNK_SIZE) {
+                    finishChunk();
+                }
+            }
+            length += len;
+        }
+
+        private void finishChunk() {
+            chunkHashes.add(chunkHasher.hash());
+            chunkHasher = hashFunction.newPrimitiveHasher();
+            bytesInChunk = 0;
+        }
+
+        HashCode hash() {
+            if (bytesInChunk > 0) {
+                finishChunk();
+            }
+            return combine(length, chunkHashes);
+        }
+    }
+}
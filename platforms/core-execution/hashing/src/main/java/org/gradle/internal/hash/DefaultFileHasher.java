@@ -15,30 +15,73 @@
  */
 package org.gradle.internal.hash;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
 
 public class DefaultFileHasher implements FileHasher {
+    private static final long UNKNOWN_LENGTH = -1;
+
     private final StreamHasher streamHasher;
+    private final ChunkedContentHasher chunkedContentHasher;
 
     public DefaultFileHasher(StreamHasher streamHasher) {
+        this(streamHasher, FileContentHashMode.current());
+    }
+
+    public DefaultFileHasher(StreamHasher streamHasher, FileContentHashMode mode) {
+        this(streamHasher, mode, null);
+    }
+
+    /**
+     * Creates a file hasher which hashes files larger than the mode's chunking threshold as chunks, in parallel on the given executor if there is one.
+     * The stream hasher must use the same mode, so that small and large files are hashed consistently.
+     */
+    public DefaultFileHasher(StreamHasher streamHasher, FileContentHashMode mode, @Nullable Executor chunkHashingExecutor) {
         this.streamHasher = streamHasher;
+        this.chunkedContentHasher = new ChunkedContentHasher(mode.getHashFunction(), mode.getChunkingThreshold(), chunkHashingExecutor);
     }
 
     @Override
     public HashCode hash(File file) {
+        if (chunkedContentHasher.isEnabled()) {
+            return hash(file, file.length());
+        }
+        return hashStream(file, UNKNOWN_LENGTH);
+    }
+
+    @Override
+    public HashCode hash(File file, long length, long lastModified) {
+        return hash(file, length);
+    }
+
+    private HashCode hash(File file, long length) {
+        if (chunkedContentHasher.isChunked(length)) {
+            return hashChunked(file);
+        }
+        return hashStream(file, length);
+    }
+
+    private HashCode hashStream(File file, long length) {
         InputStream inputStream;
         try {
             inputStream = new FileInputStream(file);
         } catch (FileNotFoundException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s' as it does not exist.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s' as it does not exist.", file), e);
         }
         try {
-            return streamHasher.hash(inputStream);
+            return length == UNKNOWN_LENGTH
+                ? streamHasher.hash(inputStream)
+                : streamHasher.hash(inputStream, length);
         } finally {
             try {
                 inputStream.close();
@@ -48,8 +91,30 @@ public HashCode hash(File file) {
         }
     }
 
-    @Override
-    public HashCode hash(File file, long length, long lastModified) {
-        return hash(file);
+    private HashCode hashChunked(File file) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s' as it does not exist.", file), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s'.", file), e);
+        }
+        try {
+            long size = channel.size();
+            if (!chunkedContentHasher.isChunked(size)) {
+                // The file shrunk since its metadata was captured
+                return streamHasher.hash(Channels.newInputStream(channel), size);
+            }
+            return chunkedContentHasher.hash(channel, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s'.", file), e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Ignored
+            }
+        }
     }
 }
@@ -26,37 +26,83 @@
 
 public class DefaultStreamHasher implements StreamHasher {
     private static final HashCode SIGNATURE = Hashing.signature(DefaultStreamHasher.class);
+    private static final long UNKNOWN_LENGTH = -1;
 
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final HashFunction hashFunction;
+    private final ChunkedContentHasher chunkedContentHasher;
+
+    public DefaultStreamHasher() {
+        this(FileContentHashMode.current());
+    }
+
+    public DefaultStreamHasher(FileContentHashMode mode) {
+        this(mode.getHashFunction(), mode.getChunkingThreshold());
+    }
+
+    public DefaultStreamHasher(HashFunction hashFunction) {
+        this(hashFunction, Long.MAX_VALUE);
+    }
+
+    public DefaultStreamHasher(HashFunction hashFunction, long chunkingThreshold) {
+        this.hashFunction = hashFunction;
+        this.chunkedContentHasher = new ChunkedContentHasher(hashFunction, chunkingThreshold, null);
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
+        return hash(inputStream, UNKNOWN_LENGTH);
+    }
+
+    @Override
+    public HashCode hash(InputStream inputStream, long length) {
         try {
-            return doHash(inputStream, ByteStreams.nullOutputStream());
+            return doHash(inputStream, ByteStreams.nullOutputStream(), length);
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException("Failed to create hash for file content.", e);
         }
     }
 
     @Override
     public HashCode hashCopy(InputStream inputStream, OutputStream outputStream) throws IOException {
-        return doHash(inputStream, outputStream);
+        return doHash(inputStream, outputStream, UNKNOWN_LENGTH);
     }
 
-    private HashCode doHash(InputStream inputStream, OutputStream outputStream) throws IOException {
+    private HashCode doHash(InputStream inputStream, OutputStream outputStream, long expectedLength) throws IOException {
         byte[] buffer = takeBuffer();
         try {
-            PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
-            hasher.putHash(SIGNATURE);
+            // When the length is not known up front, the content is hashed both as a whole and as chunks until it grows beyond the threshold
+            boolean chunkingUndecided = chunkedContentHasher.isEnabled() && expectedLength == UNKNOWN_LENGTH;
+            PrimitiveHasher hasher = null;
+            if (chunkingUndecided || !chunkedContentHasher.isChunked(expectedLength)) {
+                hasher = hashFunction.newPrimitiveHasher();
+                hasher.putHash(SIGNATURE);
+            }
+            ChunkedContentHasher.StreamingChunkHasher chunkHasher = chunkingUndecided || hasher == null
+                ? chunkedContentHasher.newStreamingHasher()
+                : null;
+            long length = 0;
             while (true) {
                 int nread = inputStream.read(buffer);
                 if (nread < 0) {
                     break;
                 }
                 outputStream.write(buffer, 0, nread);
-                hasher.putBytes(buffer, 0, nread);
+                length += nread;
+                if (chunkingUndecided && chunkedContentHasher.isChunked(length)) {
+                    hasher = null;
+                    chunkingUndecided = false;
+                }
+                if (hasher != null) {
+                    hasher.putBytes(buffer, 0, nread);
+                }
+                if (chunkHasher != null) {
+                    chunkHasher.putBytes(buffer, 0, nread);
+                }
             }
-            return hasher.hash();
+            return hasher != null
+                ? hasher.hash()
+                : chunkHasher.hash();
         } finally {
             returnBuffer(buffer);
         }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import java.util.Locale;
+
+/**
+ * The hash function used for fingerprinting the content of files and resources.
+ * <p>
+ * Hashes produced in different modes are not comparable, so anything that persists content hashes
+ * across builds must be keyed by the mode's {@link #getVersion() version}.
+ * The mode is selected via the {@value #SYSTEM_PROPERTY} system property and defaults to {@link #DEFAULT}.
+ * <p>
+ * The property is read once, when the process starts, since the file hashes retained by a daemon are only valid for one mode.
+ * The daemon treats it as an immutable JVM argument, so requesting a different mode on the command line or via {@code org.gradle.jvmargs}
+ * uses a daemon started with that mode.
+ */
+public enum FileContentHashMode {
+    /**
+     * MD5 over the whole content, the historical default.
+     */
+    DEFAULT("md5-v1", Hashing.md5(), Long.MAX_VALUE),
+    /**
+     * A fast, non-cryptographic 128-bit hash function.
+     * Content larger than 16 MiB is hashed as a tree of chunks, which allows hashing large files in parallel.
+     */
+    FAST("murmur3_128-v2", Hashing.murmur3_128(), 16 * 1024 * 1024);
+
+    public static final String SYSTEM_PROPERTY = "org.gradle.internal.hash.file-content-mode";
+
+    private static final FileContentHashMode CURRENT = fromSystemProperty();
+
+    private final String version;
+    private final HashFunction hashFunction;
+    private final long chunkingThreshold;
+
+    FileContentHashMode(String version, HashFunction hashFunction, long chunkingThreshold) {
+        this.version = version;
+        this.hashFunction = hashFunction;
+        this.chunkingThreshold = chunkingThreshold;
+    }
+
+    /**
+     * The identifier of the hash function and of the format of the hashes it produces.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Content longer than this number of bytes is hashed in chunks. {@link Long#MAX_VALUE} means content is never chunked.
+     */
+    public long getChunkingThreshold() {
+        return chunkingThreshold;
+    }
+
+    /**
+     * Returns the name of a persistent cache holding content hashes for this mode.
+     * The default mode keeps the given base name so existing caches stay valid.
+     */
+    public String getCacheName(String baseName) {
+        return this == DEFAULT ? baseName : baseName + "-" + version;
+    }
+
+    /**
+     * The mode selected for the current process when it started.
+     */
+    public static FileContentHashMode current() {
+        return CURRENT;
+    }
+
+    private static FileContentHashMode fromSystemProperty() {
+        String value = System.getProperty(SYSTEM_PROPERTY);
+        if (value == null || value.isEmpty()) {
+            return DEFAULT;
+        }
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for system property '%s'. Supported values are 'default' and 'fast'.", value, SYSTEM_PROPERTY), e);
+        }
+    }
+}
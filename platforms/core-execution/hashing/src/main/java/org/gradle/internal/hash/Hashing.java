@@ -47,6 +47,8 @@ private Hashing() {
 
     private static final HashFunction SHA512 = MessageDigestHashFunction.of("SHA-512");
 
+    private static final HashFunction MURMUR3_128 = new GuavaHashFunction("MURMUR3-128", com.google.common.hash.Hashing.murmur3_128());
+
     private static final HashFunction DEFAULT = MD5;
 
     /**
@@ -152,33 +154,26 @@ public static HashFunction sha512() {
         return SHA512;
     }
 
-    private static abstract class MessageDigestHashFunction implements HashFunction {
-        private final int hexDigits;
+    /**
+     * Non-cryptographic 128-bit MurmurHash3 hashing function.
+     * Much faster than {@link #md5()}, but must not be used where resistance against malicious collisions matters.
+     */
+    public static HashFunction murmur3_128() {
+        return MURMUR3_128;
+    }
 
-        public MessageDigestHashFunction(int hashBits) {
-            this.hexDigits = hashBits / 4;
-        }
+    /**
+     * The hashing function used to hash the content of files and resources, as selected by {@link FileContentHashMode#current()}.
+     */
+    public static HashFunction fileContentFunction() {
+        return FileContentHashMode.current().getHashFunction();
+    }
 
-        public static MessageDigestHashFunction of(String algorithm) {
-            MessageDigest prototype;
-            try {
-                prototype = MessageDigest.getInstance(algorithm);
-            } catch (NoSuchAlgorithmException e) {
-                throw new IllegalArgumentException("Cannot instantiate digest algorithm: " + algorithm);
-            }
-            int hashBits = prototype.getDigestLength() * 8;
-            try {
-                prototype.clone();
-                return new CloningMessageDigestHashFunction(prototype, hashBits);
-            } catch (CloneNotSupportedException e) {
-                return new RegularMessageDigestHashFunction(algorithm, hashBits);
-            }
-        }
+    private static abstract class AbstractHashFunction implements HashFunction {
+        private final int hexDigits;
 
-        @Override
-        public PrimitiveHasher newPrimitiveHasher() {
-            MessageDigest digest = createDigest();
-            return new MessageDigestHasher(digest);
+        public AbstractHashFunction(int hashBits) {
+            this.hexDigits = hashBits / 4;
         }
 
         @Override
@@ -218,8 +213,6 @@ private HashingOutputStream primitiveStreamHasher() {
             return new HashingOutputStream(this, ByteStreams.nullOutputStream());
         }
 
-        protected abstract MessageDigest createDigest();
-
         @Override
         public int getHexDigits() {
             return hexDigits;
@@ -231,6 +224,57 @@ public String toString() {
         }
     }
 
+    private static abstract class MessageDigestHashFunction extends AbstractHashFunction {
+        public MessageDigestHashFunction(int hashBits) {
+            super(hashBits);
+        }
+
+        public static MessageDigestHashFunction of(String algorithm) {
+            MessageDigest prototype;
+            try {
+                prototype = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Cannot instantiate digest algorithm: " + algorithm);
+            }
+            int hashBits = prototype.getDigestLength() * 8;
+            try {
+                prototype.clone();
+                return new CloningMessageDigestHashFunction(prototype, hashBits);
+            } catch (CloneNotSupportedException e) {
+                return new RegularMessageDigestHashFunction(algorithm, hashBits);
+            }
+        }
+
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            MessageDigest digest = createDigest();
+            return new MessageDigestHasher(digest);
+        }
+
+        protected abstract MessageDigest createDigest();
+    }
+
+    private static class GuavaHashFunction extends AbstractHashFunction {
+        private final String algorithm;
+        private final com.google.common.hash.HashFunction delegate;
+
+        public GuavaHashFunction(String algorithm, com.google.common.hash.HashFunction delegate) {
+            super(delegate.bits());
+            this.algorithm = algorithm;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            return new GuavaHasher(delegate.newHasher());
+        }
+    }
+
     private static class CloningMessageDigestHashFunction extends MessageDigestHashFunction {
         private final MessageDigest prototype;
 
@@ -362,6 +406,73 @@ public HashCode hash() {
         }
     }
 
+    private static class GuavaHasher implements PrimitiveHasher {
+        private com.google.common.hash.Hasher hasher;
+
+        public GuavaHasher(com.google.common.hash.Hasher hasher) {
+            this.hasher = hasher;
+        }
+
+        private com.google.common.hash.Hasher getHasher() {
+            if (hasher == null) {
+                throw new IllegalStateException("Cannot reuse hasher!");
+            }
+            return hasher;
+        }
+
+        @Override
+        public void putByte(byte b) {
+            getHasher().putByte(b);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes) {
+            getHasher().putBytes(bytes);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes, int off, int len) {
+            getHasher().putBytes(bytes, off, len);
+        }
+
+        @Override
+        public void putInt(int value) {
+            getHasher().putInt(value);
+        }
+
+        @Override
+        public void putLong(long value) {
+            getHasher().putLong(value);
+        }
+
+        @Override
+        public void putDouble(double value) {
+            getHasher().putDouble(value);
+        }
+
+        @Override
+        public void putBoolean(boolean value) {
+            getHasher().putBoolean(value);
+        }
+
+        @Override
+        public void putString(CharSequence value) {
+            getHasher().putString(value, Charsets.UTF_8);
+        }
+
+        @Override
+        public void putHash(HashCode hashCode) {
+            hashCode.appendToHasher(this);
+        }
+
+        @Override
+        public HashCode hash() {
+            byte[] bytes = getHasher().hash().asBytes();
+            hasher = null;
+            return HashCode.fromBytes(bytes, SAFE_TO_REUSE_BYTES);
+        }
+    }
+
     private static class DefaultHasher implements Hasher {
         private final PrimitiveHasher hasher;
 
@@ -25,6 +25,11 @@ public interface StreamHasher {
      */
     HashCode hash(InputStream inputStream);
 
+    /**
+     * Returns the hash of the given input stream, which is known to hold the given number of bytes. The stream will not be closed by the method.
+     */
+    HashCode hash(InputStream inputStream, long length);
+
     /**
      * Returns the hash of the given input stream while copying the data to the output stream.
      * The method will not close either stream.
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+class DefaultFileHasherTest extends Specification {
+    private static final int CHUNK_SIZE = ChunkedContentHasher.CHUNK_SIZE
+    private static final int THRESHOLD = FileContentHashMode.FAST.chunkingThreshold as int
+
+    @TempDir
+    File temporaryFolder
+
+    def "hashes files larger than the threshold the same way as streams with the same content (#size bytes)"() {
+        def content = new byte[size]
+        new Random(size).nextBytes(content)
+        def file = new File(temporaryFolder, "large.bin")
+        file.bytes = content
+        def streamHasher = new DefaultStreamHasher(FileContentHashMode.FAST)
+        def fileHasher = new DefaultFileHasher(streamHasher, FileContentHashMode.FAST)
+
+        expect:
+        fileHasher.hash(file) == streamHasher.hash(new ByteArrayInputStream(content))
+        fileHasher.hash(file, file.length(), file.lastModified()) == streamHasher.hash(new ByteArrayInputStream(content))
+
+        where:
+        size << [0, 1, CHUNK_SIZE, THRESHOLD, THRESHOLD + 1, 5 * CHUNK_SIZE + 17]
+    }
+
+    def "hashes chunks on the given executor the same way as sequentially"() {
+        def content = new byte[5 * CHUNK_SIZE + 17]
+        new Random(17).nextBytes(content)
+        def file = new File(temporaryFolder, "large.bin")
+        file.bytes = content
+        def streamHasher = new DefaultStreamHasher(FileContentHashMode.FAST)
+        def executor = Executors.newFixedThreadPool(2)
+
+        expect:
+        new DefaultFileHasher(streamHasher, FileContentHashMode.FAST, executor).hash(file) == new DefaultFileHasher(streamHasher, FileContentHashMode.FAST).hash(file)
+
+        cleanup:
+        executor?.shutdownNow()
+    }
+
+    def "hashes the remaining chunks on the calling thread when the executor rejects work"() {
+        def content = new byte[3 * CHUNK_SIZE]
+        new Random(3).nextBytes(content)
+        def file = new File(temporaryFolder, "large.bin")
+        file.bytes = content
+        def streamHasher = new DefaultStreamHasher(FileContentHashMode.FAST)
+        def executor = { Runnable r -> throw new RejectedExecutionException() } as Executor
+
+        expect:
+        new DefaultFileHasher(streamHasher, FileContentHashMode.FAST, executor).hash(file) == streamHasher.hash(new ByteArrayInputStream(content))
+    }
+
+    def "chunked hashes differ from whole content hashes"() {
+        def content = new byte[THRESHOLD + 1]
+        def file = new File(temporaryFolder, "large.bin")
+        file.bytes = content
+
+        expect:
+        new DefaultFileHasher(new DefaultStreamHasher(FileContentHashMode.FAST), FileContentHashMode.FAST).hash(file) != Hashing.murmur3_128().hashFile(file)
+    }
+
+    def "default mode does not chunk content"() {
+        def file = new File(temporaryFolder, "file.txt")
+        file.text = "hello"
+
+        expect:
+        new DefaultFileHasher(new DefaultStreamHasher(FileContentHashMode.DEFAULT), FileContentHashMode.DEFAULT).hash(file).toString() == "af67a92e9f73b51572e9b94e343d2840"
+    }
+
+    def "reports missing files"() {
+        def file = new File(temporaryFolder, "missing.bin")
+
+        when:
+        new DefaultFileHasher(new DefaultStreamHasher(FileContentHashMode.FAST), FileContentHashMode.FAST).hash(file, THRESHOLD + 1, 0)
+
+        then:
+        def e = thrown(UncheckedIOException)
+        e.message == "Failed to create hash for file '${file}' as it does not exist."
+    }
+}
@@ -19,6 +19,8 @@ package org.gradle.internal.hash
 import spock.lang.Specification
 
 class DefaultStreamHasherTest extends Specification {
+    private static final int THRESHOLD = FileContentHashMode.FAST.chunkingThreshold as int
+
     def "can hash input"() {
         def input = new ByteArrayInputStream("hello".bytes)
         when:
@@ -36,4 +38,25 @@ class DefaultStreamHasherTest extends Specification {
         hash.toString() == "af67a92e9f73b51572e9b94e343d2840"
         output.toByteArray() == "hello".bytes
     }
+
+    def "can hash input with a different hash function"() {
+        def input = new ByteArrayInputStream("hello".bytes)
+        when:
+        def hash = new DefaultStreamHasher(Hashing.murmur3_128()).hash(input)
+        then:
+        hash.length() == 16
+        hash != new DefaultStreamHasher(Hashing.md5()).hash(new ByteArrayInputStream("hello".bytes))
+    }
+
+    def "hashes input of known length the same way as input of unknown length (#size bytes)"() {
+        def content = new byte[size]
+        new Random(size).nextBytes(content)
+        def hasher = new DefaultStreamHasher(FileContentHashMode.FAST)
+
+        expect:
+        hasher.hash(new ByteArrayInputStream(content), size) == hasher.hash(new ByteArrayInputStream(content))
+
+        where:
+        size << [0, 5, THRESHOLD, THRESHOLD + 1]
+    }
 }
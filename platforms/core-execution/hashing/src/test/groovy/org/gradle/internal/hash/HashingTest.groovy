@@ -109,6 +109,39 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 hashes are 128 bits and match Guava'() {
+        given:
+        def bytes = "Hello, Gradle!".bytes
+
+        when:
+        def hash = Hashing.murmur3_128().hashBytes(bytes)
+
+        then:
+        hash.length() == 16
+        Hashing.murmur3_128().hexDigits == 32
+        hash.toByteArray() == com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).asBytes()
+    }
+
+    def 'murmur3 hasher cannot be reused'() {
+        given:
+        def hasher = Hashing.murmur3_128().newHasher()
+        hasher.putInt(1)
+        hasher.hash()
+
+        when:
+        hasher.hash()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'file content hash modes have distinct versions and cache names'() {
+        expect:
+        FileContentHashMode.DEFAULT.getCacheName("fileHashes") == "fileHashes"
+        FileContentHashMode.FAST.getCacheName("fileHashes") == "fileHashes-murmur3_128-v2"
+        FileContentHashMode.values()*.version.toSet().size() == FileContentHashMode.values().length
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
@@ -20,6 +20,7 @@
 import com.google.common.collect.ImmutableSortedMap;
 import org.gradle.internal.hash.HashCode;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 /**
@@ -39,6 +40,14 @@ public interface FileCollectionFingerprint {
 
     boolean wasCreatedWithStrategy(FingerprintingStrategy strategy);
 
+    /**
+     * The combined hash of the fingerprints if it is known without looking at the fingerprints, or {@code null} otherwise.
+     */
+    @Nullable
+    default HashCode getKnownHash() {
+        return null;
+    }
+
     FileCollectionFingerprint EMPTY = new FileCollectionFingerprint() {
         @Override
         public Map<String, FileSystemLocationFingerprint> getFingerprints() {
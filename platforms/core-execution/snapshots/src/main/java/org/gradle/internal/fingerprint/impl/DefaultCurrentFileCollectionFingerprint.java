@@ -34,7 +34,10 @@
 
 public class DefaultCurrentFileCollectionFingerprint implements CurrentFileCollectionFingerprint {
 
+    @Nullable
     private final Map<String, FileSystemLocationFingerprint> fingerprints;
+    @Nullable
+    private final FileCollectionFingerprint reusedFingerprint;
     private final FingerprintHashingStrategy hashingStrategy;
     private final String identifier;
     private final FileSystemSnapshot roots;
@@ -53,6 +56,11 @@ public static CurrentFileCollectionFingerprint from(FileSystemSnapshot roots, Fi
             && candidate.wasCreatedWithStrategy(strategy)
             && equalRootHashes(candidate.getRootHashes(), rootHashes)
         ) {
+            HashCode candidateHash = candidate.getKnownHash();
+            if (candidateHash != null) {
+                // Archived fingerprints are never empty, and the candidate only needs to look at its fingerprints if someone asks for them
+                return new DefaultCurrentFileCollectionFingerprint(null, candidate, candidateHash, roots, rootHashes, strategy);
+            }
             fingerprints = candidate.getFingerprints();
         } else {
             fingerprints = strategy.collectFingerprints(roots);
@@ -60,7 +68,7 @@ && equalRootHashes(candidate.getRootHashes(), rootHashes)
         if (fingerprints.isEmpty()) {
             return strategy.getEmptyFingerprint();
         }
-        return new DefaultCurrentFileCollectionFingerprint(fingerprints, roots, rootHashes, strategy);
+        return new DefaultCurrentFileCollectionFingerprint(fingerprints, null, null, roots, rootHashes, strategy);
     }
 
     private static boolean equalRootHashes(ImmutableMultimap<String, HashCode> first, ImmutableMultimap<String, HashCode> second) {
@@ -69,12 +77,16 @@ private static boolean equalRootHashes(ImmutableMultimap<String, HashCode> first
     }
 
     private DefaultCurrentFileCollectionFingerprint(
-        Map<String, FileSystemLocationFingerprint> fingerprints,
+        @Nullable Map<String, FileSystemLocationFingerprint> fingerprints,
+        @Nullable FileCollectionFingerprint reusedFingerprint,
+        @Nullable HashCode hash,
         FileSystemSnapshot roots,
         ImmutableMultimap<String, HashCode> rootHashes,
         FingerprintingStrategy strategy
     ) {
         this.fingerprints = fingerprints;
+        this.reusedFingerprint = reusedFingerprint;
+        this.hash = hash;
         this.identifier = strategy.getIdentifier();
         this.hashingStrategy = strategy.getHashingStrategy();
         this.strategyConfigurationHash = strategy.getConfigurationHash();
@@ -86,7 +98,7 @@ private DefaultCurrentFileCollectionFingerprint(
     public HashCode getHash() {
         if (hash == null) {
             Hasher hasher = Hashing.newHasher();
-            hashingStrategy.appendToHasher(hasher, fingerprints.values());
+            hashingStrategy.appendToHasher(hasher, getFingerprints().values());
             hash = hasher.hash();
         }
         return hash;
@@ -100,7 +112,13 @@ public boolean isEmpty() {
 
     @Override
     public Map<String, FileSystemLocationFingerprint> getFingerprints() {
-        return fingerprints;
+        return reusedFingerprint != null ? reusedFingerprint.getFingerprints() : fingerprints;
+    }
+
+    @Nullable
+    @Override
+    public HashCode getKnownHash() {
+        return hash;
     }
 
     @Override
@@ -125,11 +143,15 @@ public FileSystemSnapshot getSnapshot() {
 
     @Override
     public FileCollectionFingerprint archive(ArchivedFileCollectionFingerprintFactory factory) {
-        return factory.createArchivedFileCollectionFingerprint(fingerprints, rootHashes, strategyConfigurationHash);
+        if (reusedFingerprint != null) {
+            // The reused fingerprint has been archived before, and it has the same contents
+            return reusedFingerprint;
+        }
+        return factory.createArchivedFileCollectionFingerprint(fingerprints, rootHashes, strategyConfigurationHash, getHash());
     }
 
     @Override
     public String toString() {
-        return identifier + fingerprints;
+        return identifier + getFingerprints();
     }
 }
@@ -17,6 +17,7 @@
 package org.gradle.internal.snapshot.impl;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Interner;
@@ -56,7 +57,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -89,12 +94,30 @@ public Iterable<String> getRemappedSegments(Iterable<String> segments) {
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
     private final DirectorySnapshotterStatistics.Collector collector;
+    private final Executor hashingExecutor;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector) {
+        this(hasher, stringInterner, defaultExcludes, collector, null);
+    }
+
+    /**
+     * Creates a directory snapshotter.
+     *
+     * @param hashingExecutor When present, files are hashed on this executor while the directory tree is traversed.
+     * The traversal itself stays on the calling thread, so the resulting snapshots are identical to the ones created without an executor.
+     */
+    public DirectorySnapshotter(
+        FileHasher hasher,
+        Interner<String> stringInterner,
+        Collection<String> defaultExcludes,
+        DirectorySnapshotterStatistics.Collector collector,
+        @Nullable Executor hashingExecutor
+    ) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
         this.collector = collector;
+        this.hashingExecutor = hashingExecutor;
     }
 
     /**
@@ -119,11 +142,15 @@ public FileSystemLocationSnapshot snapshot(
         Map<String, ? extends FileSystemLocationSnapshot> previouslyKnownSnapshots,
         Consumer<FileSystemLocationSnapshot> unfilteredSnapshotRecorder
     ) {
+        long startTime = System.nanoTime();
+        long traversalTime = -1;
+        AtomicLong hashingTime = new AtomicLong();
         try {
             AtomicBoolean hasBeenFiltered = new AtomicBoolean();
             Path rootPath = Paths.get(absolutePath);
-            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING, previouslyKnownSnapshots, unfilteredSnapshotRecorder);
+            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING, previouslyKnownSnapshots, unfilteredSnapshotRecorder, hashingExecutor, hashingTime);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
+            traversalTime = System.nanoTime() - startTime;
             FileSystemLocationSnapshot result = visitor.getResult();
             if (!hasBeenFiltered.get()) {
                 unfilteredSnapshotRecorder.accept(result);
@@ -131,6 +158,12 @@ public FileSystemLocationSnapshot snapshot(
             return result;
         } catch (IOException e) {
             throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", absolutePath), e);
+        } finally {
+            if (traversalTime < 0) {
+                traversalTime = System.nanoTime() - startTime;
+            }
+            // When hashing inline, the walk includes the hashing time
+            collector.recordSnapshotTimes(hashingExecutor == null ? traversalTime - hashingTime.get() : traversalTime, hashingTime.get());
         }
     }
 
@@ -266,6 +299,9 @@ private static class PathVisitor extends DirectorySnapshotterStatistics.Collecti
         private final Set<FileSystemLocationSnapshot> filteredDirectorySnapshots = new HashSet<>();
         private final ImmutableMap<String, ? extends FileSystemLocationSnapshot> previouslyKnownSnapshots;
         private final Consumer<FileSystemLocationSnapshot> unfilteredSnapshotRecorder;
+        private final Executor hashingExecutor;
+        private final AtomicLong hashingTime;
+        private final List<Runnable> deferredBuilderOperations = new ArrayList<>();
 
         public PathVisitor(
             @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
@@ -276,7 +312,9 @@ public PathVisitor(
             DirectorySnapshotterStatistics.Collector statisticsCollector,
             SymbolicLinkMapping symbolicLinkMapping,
             Map<String, ? extends FileSystemLocationSnapshot> previouslyKnownSnapshots,
-            Consumer<FileSystemLocationSnapshot> unfilteredSnapshotRecorder
+            Consumer<FileSystemLocationSnapshot> unfilteredSnapshotRecorder,
+            @Nullable Executor hashingExecutor,
+            AtomicLong hashingTime
         ) {
             super(statisticsCollector);
             this.builder = FilteredTrackingMerkleDirectorySnapshotBuilder.sortingRequired(this::recordUnfilteredSnapshot);
@@ -288,6 +326,20 @@ public PathVisitor(
             this.symbolicLinkMapping = symbolicLinkMapping;
             this.previouslyKnownSnapshots = ImmutableMap.copyOf(previouslyKnownSnapshots);
             this.unfilteredSnapshotRecorder = unfilteredSnapshotRecorder;
+            this.hashingExecutor = hashingExecutor;
+            this.hashingTime = hashingTime;
+        }
+
+        /**
+         * Applies the operation to the builder right away, or defers it until {@link #getResult()} when files are hashed in parallel.
+         * Either way the builder sees the same sequence of operations, so the resulting snapshots are the same.
+         */
+        private void onBuilder(Runnable operation) {
+            if (hashingExecutor == null) {
+                operation.run();
+            } else {
+                deferredBuilderOperations.add(operation);
+            }
         }
 
         private void recordUnfilteredSnapshot(FileSystemLocationSnapshot snapshot) {
@@ -307,7 +359,8 @@ protected FileVisitResult doPreVisitDirectory(Path dir, BasicFileAttributes attr
                 if (predicate == null) {
                     FileSystemLocationSnapshot previouslyKnownSnapshot = previouslyKnownSnapshots.get(internedRemappedAbsolutePath);
                     if (previouslyKnownSnapshot instanceof DirectorySnapshot) {
-                        builder.visitDirectory((DirectorySnapshot) previouslyKnownSnapshot);
+                        DirectorySnapshot previouslyKnownDirectorySnapshot = (DirectorySnapshot) previouslyKnownSnapshot;
+                        onBuilder(() -> builder.visitDirectory(previouslyKnownDirectorySnapshot));
                         pathTracker.leave();
                         return FileVisitResult.SKIP_SUBTREE;
                     } else if (previouslyKnownSnapshot != null) {
@@ -315,7 +368,7 @@ protected FileVisitResult doPreVisitDirectory(Path dir, BasicFileAttributes attr
                     }
                 }
 
-                builder.enterDirectory(AccessType.DIRECT, internedRemappedAbsolutePath, fileName, INCLUDE_EMPTY_DIRS);
+                onBuilder(() -> builder.enterDirectory(AccessType.DIRECT, internedRemappedAbsolutePath, fileName, INCLUDE_EMPTY_DIRS));
                 parentDirectories.addFirst(dir.toString());
                 return FileVisitResult.CONTINUE;
             } else {
@@ -333,11 +386,13 @@ protected FileVisitResult doPostVisitDirectory(Path dir, IOException exc) {
             if (isNotFileSystemLoopException(exc)) {
                 throw new UncheckedIOException(String.format("Could not read directory path '%s'.", dir), exc);
             }
-            boolean currentLevelComplete = builder.isCurrentLevelUnfiltered();
-            FileSystemLocationSnapshot currentLevel = builder.leaveDirectory();
-            if (!currentLevelComplete) {
-                filteredDirectorySnapshots.add(currentLevel);
-            }
+            onBuilder(() -> {
+                boolean currentLevelComplete = builder.isCurrentLevelUnfiltered();
+                FileSystemLocationSnapshot currentLevel = builder.leaveDirectory();
+                if (!currentLevelComplete) {
+                    filteredDirectorySnapshots.add(currentLevel);
+                }
+            });
             parentDirectories.removeFirst();
             return FileVisitResult.CONTINUE;
         }
@@ -360,11 +415,15 @@ protected FileVisitResult doVisitFile(Path file, BasicFileAttributes attrs) {
                                 targetSnapshot.getHash(),
                                 targetSnapshot.getChildren()
                             );
-                            builder.visitDirectory(directorySnapshotAccessedViaSymlink);
                             boolean symlinkFiltered = symlinkHasBeenFiltered.get();
+                            onBuilder(() -> {
+                                builder.visitDirectory(directorySnapshotAccessedViaSymlink);
+                                if (symlinkFiltered) {
+                                    filteredDirectorySnapshots.add(directorySnapshotAccessedViaSymlink);
+                                    builder.markCurrentLevelAsFiltered();
+                                }
+                            });
                             if (symlinkFiltered) {
-                                filteredDirectorySnapshots.add(directorySnapshotAccessedViaSymlink);
-                                builder.markCurrentLevelAsFiltered();
                                 hasBeenFiltered.set(true);
                             }
                         }
@@ -395,7 +454,9 @@ private DirectorySnapshot followSymlink(Path file, String internedFileName, Atom
                         collector,
                         symbolicLinkMapping.withNewMapping(file.toString(), targetDirString, pathTracker),
                         previouslyKnownSnapshots,
-                        unfilteredSnapshotRecorder);
+                        unfilteredSnapshotRecorder,
+                        hashingExecutor,
+                        hashingTime);
                     Files.walkFileTree(targetDir, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, subtreeVisitor);
                     return (DirectorySnapshot) subtreeVisitor.getResult();
                 } else {
@@ -413,7 +474,12 @@ private boolean introducesCycle(String targetDirString) {
         private void visitResolvedFile(Path file, BasicFileAttributes targetAttributes, AccessType accessType) {
             String internedName = intern(file.getFileName().toString());
             if (shouldVisitFile(file, internedName)) {
-                builder.visitLeafElement(snapshotFile(file, internedName, targetAttributes, accessType));
+                if (hashingExecutor == null) {
+                    builder.visitLeafElement(snapshotFile(file, internedName, targetAttributes, accessType));
+                } else {
+                    CompletableFuture<FileSystemLeafSnapshot> snapshot = CompletableFuture.supplyAsync(() -> snapshotFile(file, internedName, targetAttributes, accessType), hashingExecutor);
+                    deferredBuilderOperations.add(() -> builder.visitLeafElement(getCompleted(snapshot)));
+                }
             }
         }
 
@@ -452,7 +518,9 @@ private FileSystemLeafSnapshot snapshotFile(Path absoluteFilePath, String intern
             long lastModified = attrs.lastModifiedTime().toMillis();
             long fileLength = attrs.size();
             FileMetadata metadata = DefaultFileMetadata.file(lastModified, fileLength, accessType);
+            long hashingStartTime = System.nanoTime();
             HashCode hash = hasher.hash(absoluteFilePath.toFile(), fileLength, lastModified);
+            hashingTime.addAndGet(System.nanoTime() - hashingStartTime);
             return new RegularFileSnapshot(internedRemappedAbsoluteFilePath, internedName, hash, metadata);
         }
 
@@ -506,7 +574,7 @@ private boolean shouldVisit(Path path, String internedName, boolean isDirectory)
             }
             boolean allowed = predicate.test(path, internedName, isDirectory, symbolicLinkMapping.getRemappedSegments(pathTracker.getSegments()));
             if (!allowed) {
-                builder.markCurrentLevelAsFiltered();
+                onBuilder(builder::markCurrentLevelAsFiltered);
                 hasBeenFiltered.set(true);
             }
             return allowed;
@@ -518,7 +586,20 @@ private String getInternedFileName(Path dir) {
         }
 
         public FileSystemLocationSnapshot getResult() {
+            for (Runnable operation : deferredBuilderOperations) {
+                operation.run();
+            }
+            deferredBuilderOperations.clear();
             return builder.getResult();
         }
+
+        private static <T> T getCompleted(CompletableFuture<T> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+        }
     }
 }
@@ -22,6 +22,7 @@
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public interface DirectorySnapshotterStatistics {
@@ -45,11 +46,24 @@ public interface DirectorySnapshotterStatistics {
      */
     long getFailedFiles();
 
+    /**
+     * The time spent traversing directory trees, excluding the time spent hashing files.
+     */
+    long getTraversalTimeMillis();
+
+    /**
+     * The time spent hashing files.
+     * When files are hashed in parallel, this is the sum of the hashing time on all threads.
+     */
+    long getHashingTimeMillis();
+
     class Collector {
         private final AtomicLong hierarchyCount = new AtomicLong();
         private final AtomicLong directoryCount = new AtomicLong();
         private final AtomicLong fileCount = new AtomicLong();
         private final AtomicLong failedFileCount = new AtomicLong();
+        private final AtomicLong traversalTimeNanos = new AtomicLong();
+        private final AtomicLong hashingTimeNanos = new AtomicLong();
 
         public void recordVisitHierarchy() {
             hierarchyCount.incrementAndGet();
@@ -67,11 +81,18 @@ public void recordVisitFileFailed() {
             failedFileCount.incrementAndGet();
         }
 
+        public void recordSnapshotTimes(long traversalTimeNanos, long hashingTimeNanos) {
+            this.traversalTimeNanos.addAndGet(traversalTimeNanos);
+            this.hashingTimeNanos.addAndGet(hashingTimeNanos);
+        }
+
         public DirectorySnapshotterStatistics collect() {
             long hierarchyCount = this.hierarchyCount.getAndSet(0);
             long directoryCount = this.directoryCount.getAndSet(0);
             long fileCount = this.fileCount.getAndSet(0);
             long failedFileCount = this.failedFileCount.getAndSet(0);
+            long traversalTimeMillis = TimeUnit.NANOSECONDS.toMillis(this.traversalTimeNanos.getAndSet(0));
+            long hashingTimeMillis = TimeUnit.NANOSECONDS.toMillis(this.hashingTimeNanos.getAndSet(0));
 
             return new DirectorySnapshotterStatistics() {
                 @Override
@@ -94,10 +115,21 @@ public long getFailedFiles() {
                     return failedFileCount;
                 }
 
+                @Override
+                public long getTraversalTimeMillis() {
+                    return traversalTimeMillis;
+                }
+
+                @Override
+                public long getHashingTimeMillis() {
+                    return hashingTimeMillis;
+                }
+
                 @Override
                 public String toString() {
-                    return MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files)",
-                        hierarchyCount, directoryCount, fileCount, failedFileCount);
+                    return MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files; " +
+                            "traversal took {4,number,integer} ms, hashing took {5,number,integer} ms)",
+                        hierarchyCount, directoryCount, fileCount, failedFileCount, traversalTimeMillis, hashingTimeMillis);
                 }
             };
         }
@@ -40,12 +40,14 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -63,6 +65,7 @@ public class DefaultFileSystemAccess implements FileSystemAccess, FileSystemDefa
     private ImmutableList<String> defaultExcludes;
     private DirectorySnapshotter directorySnapshotter;
     private final FileHasher hasher;
+    private final Executor hashingExecutor;
     private final StripedProducerGuard<String> producingSnapshots = new StripedProducerGuard<>();
 
     public DefaultFileSystemAccess(
@@ -73,13 +76,27 @@ public DefaultFileSystemAccess(
         WriteListener writeListener,
         DirectorySnapshotterStatistics.Collector statisticsCollector,
         String... defaultExcludes
+    ) {
+        this(hasher, stringInterner, stat, virtualFileSystem, writeListener, statisticsCollector, null, defaultExcludes);
+    }
+
+    public DefaultFileSystemAccess(
+        FileHasher hasher,
+        Interner<String> stringInterner,
+        Stat stat,
+        VirtualFileSystem virtualFileSystem,
+        WriteListener writeListener,
+        DirectorySnapshotterStatistics.Collector statisticsCollector,
+        @Nullable Executor hashingExecutor,
+        String... defaultExcludes
     ) {
         this.stringInterner = stringInterner;
         this.stat = stat;
         this.writeListener = writeListener;
         this.statisticsCollector = statisticsCollector;
         this.defaultExcludes = ImmutableList.copyOf(defaultExcludes);
-        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, this.defaultExcludes, statisticsCollector);
+        this.hashingExecutor = hashingExecutor;
+        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, this.defaultExcludes, statisticsCollector, hashingExecutor);
         this.hasher = hasher;
         this.virtualFileSystem = virtualFileSystem;
     }
@@ -233,7 +250,7 @@ public void onDefaultExcludesChanged(List<String> excludes) {
         if (!defaultExcludes.equals(newDefaultExcludes)) {
             LOGGER.debug("Default excludes changes from {} to {}", defaultExcludes, newDefaultExcludes);
             defaultExcludes = newDefaultExcludes;
-            directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, newDefaultExcludes, statisticsCollector);
+            directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, newDefaultExcludes, statisticsCollector, hashingExecutor);
             virtualFileSystem.invalidateAll();
         }
     }
@@ -23,6 +23,7 @@ import org.gradle.api.tasks.util.PatternSet
 import org.gradle.internal.file.FileMetadata
 import org.gradle.internal.file.FileMetadata.AccessType
 import org.gradle.internal.fingerprint.impl.PatternSetSnapshottingFilter
+import org.gradle.internal.hash.FileHasher
 import org.gradle.internal.hash.TestFileHasher
 import org.gradle.internal.hash.TestHashCodes
 import org.gradle.internal.snapshot.DirectorySnapshot
@@ -42,6 +43,7 @@ import spock.lang.Issue
 import spock.lang.Specification
 
 import java.nio.file.Paths
+import java.util.concurrent.Executors
 import java.util.function.Consumer
 
 @UsesNativeServices
@@ -530,6 +532,59 @@ class DirectorySnapshotterTest extends Specification {
         pipe.delete()
     }
 
+    def "hashing files in parallel creates the same snapshots (filtered: #filtered)"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        (1..20).each { dirIndex ->
+            (1..10).each { fileIndex ->
+                rootDir.file("dir${dirIndex}/sub${fileIndex % 3}/file${fileIndex}.${fileIndex % 2 == 0 ? 'txt' : 'html'}").text = "content ${dirIndex} ${fileIndex}"
+            }
+        }
+        def patterns = new PatternSet().include("**/*.txt").exclude("dir1*/**")
+        def predicate = filtered ? directoryWalkerPredicate(patterns) : null
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), [], statisticsCollector, executor)
+        List<FileSystemLocationSnapshot> parallelUnfilteredSubsnapshots = []
+
+        when:
+        def snapshot = directorySnapshotter.snapshot(rootDir.absolutePath, predicate, [:], unfilteredSubSnapshotsCollector)
+        def parallelSnapshot = parallelSnapshotter.snapshot(rootDir.absolutePath, predicate, [:]) { parallelUnfilteredSubsnapshots.add(it) }
+
+        then:
+        parallelSnapshot.hash == snapshot.hash
+        SnapshotVisitorUtil.getRelativePaths(parallelSnapshot, true) == SnapshotVisitorUtil.getRelativePaths(snapshot, true)
+        parallelUnfilteredSubsnapshots*.absolutePath == unfilteredSubsnapshots*.absolutePath
+        parallelUnfilteredSubsnapshots*.hash == unfilteredSubsnapshots*.hash
+
+        cleanup:
+        executor.shutdownNow()
+
+        where:
+        filtered << [false, true]
+    }
+
+    def "failures hashing files in parallel are propagated"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a/file.txt").createFile()
+        def failure = new UncheckedIOException(new IOException("Broken"))
+        def failingHasher = Stub(FileHasher) {
+            hash(_ as File, _ as Long, _ as Long) >> { throw failure }
+        }
+        def executor = Executors.newFixedThreadPool(2)
+        def parallelSnapshotter = new DirectorySnapshotter(failingHasher, new StringInterner(), [], statisticsCollector, executor)
+
+        when:
+        parallelSnapshotter.snapshot(rootDir.absolutePath, null, [:], unfilteredSubSnapshotsCollector)
+
+        then:
+        def ex = thrown(UncheckedIOException)
+        ex.is(failure)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
     def "default excludes are correctly parsed"() {
         def defaultExcludes = new DirectorySnapshotter.DefaultExcludes(DirectoryScanner.getDefaultExcludes() as List)
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.reflect;
+
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FileContentHashMode;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.StreamHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the file content hash modes as used by {@link DefaultStreamHasher} and {@link DefaultFileHasher} for snapshotting.
+ */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class FileContentHashingBenchmark {
+
+    Random random = new Random(1234L);
+
+    @Param({"1024", "65536", "4194304", "67108864"})
+    int fileSize;
+
+    @Param({"DEFAULT", "FAST"})
+    FileContentHashMode mode;
+
+    byte[] input;
+    File inputFile;
+    StreamHasher streamHasher;
+    FileHasher fileHasher;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        input = new byte[fileSize];
+        random.nextBytes(input);
+        inputFile = File.createTempFile("hashing", ".bin");
+        Files.write(inputFile.toPath(), input);
+        streamHasher = new DefaultStreamHasher(mode);
+        fileHasher = new DefaultFileHasher(streamHasher, mode);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        Files.delete(inputFile.toPath());
+    }
+
+    @Benchmark
+    public void hashFile(Blackhole blackhole) {
+        blackhole.consume(fileHasher.hash(inputFile));
+    }
+
+    @Benchmark
+    public void hashStream(Blackhole blackhole) {
+        blackhole.consume(streamHasher.hash(new ByteArrayInputStream(input)));
+    }
+
+    @Benchmark
+    public void hashBytes(Blackhole blackhole) {
+        blackhole.consume(mode.getHashFunction().hashBytes(input));
+    }
+}
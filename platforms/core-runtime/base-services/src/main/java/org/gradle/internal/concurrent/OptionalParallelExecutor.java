@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.concurrent;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * A fixed size executor which only exists when a parallelism greater than one has been configured, usually via a system property.
+ * <p>
+ * Subclasses give each such executor its own service type.
+ */
+public abstract class OptionalParallelExecutor implements Stoppable {
+    @Nullable
+    private final ManagedExecutor executor;
+
+    protected OptionalParallelExecutor(ExecutorFactory executorFactory, String displayName, int parallelism) {
+        this.executor = parallelism > 1 ? executorFactory.create(displayName, parallelism) : null;
+    }
+
+    /**
+     * The executor to run work on, or {@code null} when the work should be done on the calling thread.
+     */
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void stop() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+}
@@ -19,6 +19,7 @@
 import com.google.common.collect.ImmutableSet;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.cache.internal.HeapProportionalCacheSizer;
+import org.gradle.internal.hash.FileContentHashMode;
 import org.gradle.process.internal.CurrentProcess;
 import org.gradle.process.internal.JvmOptions;
 import org.gradle.util.internal.CollectionUtils;
@@ -40,7 +41,8 @@ public class DaemonJvmOptions extends JvmOptions {
     public static final String SSL_TRUSTSTORETYPE_KEY = "javax.net.ssl.trustStoreType";
 
     public static final Set<String> IMMUTABLE_DAEMON_SYSTEM_PROPERTIES = ImmutableSet.of(
-        SSL_KEYSTORE_KEY, SSL_KEYSTOREPASSWORD_KEY, SSL_KEYSTORETYPE_KEY, SSL_TRUSTPASSWORD_KEY, SSL_TRUSTSTORE_KEY, SSL_TRUSTSTORETYPE_KEY, HeapProportionalCacheSizer.CACHE_RESERVED_SYSTEM_PROPERTY
+        SSL_KEYSTORE_KEY, SSL_KEYSTOREPASSWORD_KEY, SSL_KEYSTORETYPE_KEY, SSL_TRUSTPASSWORD_KEY, SSL_TRUSTSTORE_KEY, SSL_TRUSTSTORETYPE_KEY, HeapProportionalCacheSizer.CACHE_RESERVED_SYSTEM_PROPERTY,
+        FileContentHashMode.SYSTEM_PROPERTY
     );
 
     public DaemonJvmOptions(FileCollectionFactory fileCollectionFactory) {
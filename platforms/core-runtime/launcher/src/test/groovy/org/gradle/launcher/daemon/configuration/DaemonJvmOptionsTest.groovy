@@ -17,6 +17,7 @@
 package org.gradle.launcher.daemon.configuration
 
 import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.hash.FileContentHashMode
 import org.gradle.process.internal.JvmOptions
 import spock.lang.Specification
 
@@ -40,6 +41,7 @@ class DaemonJvmOptionsTest extends Specification {
         "ssl truststore path"     | DaemonJvmOptions.SSL_TRUSTSTORE_KEY       | "-D${DaemonJvmOptions.SSL_TRUSTSTORE_KEY}=truststore/path"
         "ssl truststore password" | DaemonJvmOptions.SSL_TRUSTPASSWORD_KEY    | "-D${DaemonJvmOptions.SSL_TRUSTPASSWORD_KEY}=secret"
         "ssl truststore type"     | DaemonJvmOptions.SSL_TRUSTSTORETYPE_KEY   | "-D${DaemonJvmOptions.SSL_TRUSTSTORETYPE_KEY}=jks"
+        "file content hash mode"  | FileContentHashMode.SYSTEM_PROPERTY       | "-D${FileContentHashMode.SYSTEM_PROPERTY}=fast"
     }
 
     def "#propDescr can be set as systemproperty"() {
@@ -56,6 +58,7 @@ class DaemonJvmOptionsTest extends Specification {
         "ssl truststore path"     | DaemonJvmOptions.SSL_TRUSTSTORE_KEY       | "truststore/path"
         "ssl truststore password" | DaemonJvmOptions.SSL_TRUSTPASSWORD_KEY    | "secret"
         "ssl truststore type"     | DaemonJvmOptions.SSL_TRUSTSTORETYPE_KEY   | "jks"
+        "file content hash mode"  | FileContentHashMode.SYSTEM_PROPERTY       | "fast"
     }
 
     def "all single use immutable jvm args has 4 elements" () {
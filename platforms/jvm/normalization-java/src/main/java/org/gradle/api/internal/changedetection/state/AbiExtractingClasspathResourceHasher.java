@@ -138,7 +138,7 @@ HashCode handle(ZipEntryContent zipEntry, IoFunction<ZipEntryContent, HashCode>
                     return function.apply(zipEntry);
                 } catch(Exception e) {
                     LOGGER.debug("Malformed class file '{}' found on compile classpath. Falling back to full file hash instead of ABI hashing.", zipEntry.name, e);
-                    return Hashing.hashBytes(zipEntry.content);
+                    return Hashing.fileContentFunction().hashBytes(zipEntry.content);
                 }
             }
         },
@@ -42,7 +42,7 @@ public HashCode hash(RegularFileSnapshotContext fileSnapshotContext) {
 
     @Override
     public HashCode hash(ZipEntryContext zipEntryContext) throws IOException {
-        return zipEntryContext.getEntry().withInputStream(Hashing::hashStream);
+        return zipEntryContext.getEntry().withInputStream(Hashing.fileContentFunction()::hashStream);
     }
 
     @Override
@@ -18,6 +18,7 @@
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.artifacts.VersionConstraint;
 import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.capabilities.Capability;
@@ -48,10 +49,23 @@ public ModuleComponentSelectorSerializer(AttributeContainerSerializer attributeC
     public ModuleComponentSelector read(Decoder decoder) throws IOException {
         String group = decoder.readString();
         String name = decoder.readString();
+        return readSelector(DefaultModuleIdentifier.newId(group, name), decoder);
+    }
+
+    /**
+     * Reads a selector whose module identifier is shared with the other users of the given factory, rather than creating a new one.
+     */
+    public ModuleComponentSelector read(Decoder decoder, ImmutableModuleIdentifierFactory moduleIdentifierFactory) throws IOException {
+        String group = decoder.readString();
+        String name = decoder.readString();
+        return readSelector(moduleIdentifierFactory.module(group, name), decoder);
+    }
+
+    private ModuleComponentSelector readSelector(ModuleIdentifier moduleIdentifier, Decoder decoder) throws IOException {
         VersionConstraint versionConstraint = readVersionConstraint(decoder);
         ImmutableAttributes attributes = readAttributes(decoder);
         List<Capability> capabilities = readCapabilities(decoder);
-        return newSelector(DefaultModuleIdentifier.newId(group, name), versionConstraint, attributes, capabilities);
+        return newSelector(moduleIdentifier, versionConstraint, attributes, capabilities);
     }
 
     public VersionConstraint readVersionConstraint(Decoder decoder) throws IOException {
@@ -20,7 +20,6 @@
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
-import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
 import org.gradle.internal.component.external.model.AbstractLazyModuleComponentResolveMetadata;
 import org.gradle.internal.component.external.model.AbstractRealisedModuleComponentResolveMetadata;
@@ -97,7 +96,7 @@ private VirtualComponentIdentifier readModuleIdentifier(Decoder decoder) throws
         String group = decoder.readString();
         String module = decoder.readString();
         String version = decoder.readString();
-        ModuleIdentifier moduleIdentifier = DefaultModuleIdentifier.newId(group, module);
+        ModuleIdentifier moduleIdentifier = moduleIdentifierFactory.module(group, module);
         return new DefaultVirtualModuleComponentIdentifier(moduleIdentifier, version);
     }
 
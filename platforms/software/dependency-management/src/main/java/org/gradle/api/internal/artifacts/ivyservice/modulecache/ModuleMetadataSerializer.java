@@ -24,7 +24,6 @@
 import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.attributes.AttributeContainer;
 import org.gradle.api.capabilities.Capability;
-import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
 import org.gradle.api.internal.artifacts.ModuleComponentSelectorSerializer;
 import org.gradle.api.internal.artifacts.ivyservice.NamespaceId;
@@ -478,7 +477,7 @@ private ImmutableAttributes readAttributes() throws IOException {
         private void readVariantDependencies(MutableComponentVariant variant) throws IOException {
             int count = decoder.readSmallInt();
             for (int i = 0; i < count; i++) {
-                ModuleComponentSelector selector = componentSelectorSerializer.read(decoder);
+                ModuleComponentSelector selector = componentSelectorSerializer.read(decoder, moduleIdentifierFactory);
                 String reason = decoder.readNullableString();
                 ImmutableList<ExcludeMetadata> excludes = readVariantDependencyExcludes();
                 boolean endorsing = decoder.readBoolean();
@@ -490,7 +489,7 @@ private void readVariantDependencies(MutableComponentVariant variant) throws IOE
         private void readVariantConstraints(MutableComponentVariant variant) throws IOException {
             int count = decoder.readSmallInt();
             for (int i = 0; i < count; i++) {
-                ModuleComponentSelector selector = componentSelectorSerializer.read(decoder);
+                ModuleComponentSelector selector = componentSelectorSerializer.read(decoder, moduleIdentifierFactory);
                 String reason = decoder.readNullableString();
                 variant.addDependencyConstraint(selector.getGroup(), selector.getModule(), selector.getVersionConstraint(), reason, (ImmutableAttributes) selector.getAttributes());
             }
@@ -549,7 +548,7 @@ private void readInfoSection() throws IOException {
         }
 
         private ModuleComponentIdentifier readId() throws IOException {
-            return DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId(readString(), readString()), readString());
+            return DefaultModuleComponentIdentifier.newId(moduleIdentifierFactory.module(readString(), readString()), readString());
         }
 
         private Map<NamespaceId, String> readExtraInfo() throws IOException {
@@ -601,7 +600,7 @@ private List<IvyDependencyDescriptor> readIvyDependencies() throws IOException {
         }
 
         private IvyDependencyDescriptor readIvyDependency() throws IOException {
-            ModuleComponentSelector requested = componentSelectorSerializer.read(decoder);
+            ModuleComponentSelector requested = componentSelectorSerializer.read(decoder, moduleIdentifierFactory);
             SetMultimap<String, String> configMappings = readDependencyConfigurationMapping();
             List<Artifact> artifacts = readDependencyArtifactDescriptors();
             List<Exclude> excludes = readDependencyExcludes();
@@ -673,7 +672,7 @@ private List<MavenDependencyDescriptor> readMavenDependencies(Map<Integer, Maven
         private MavenDependencyDescriptor readMavenDependency(Map<Integer, MavenDependencyDescriptor> deduplicationDependencyCache) throws IOException {
             int mapping = decoder.readSmallInt();
             if (mapping == deduplicationDependencyCache.size()) {
-                ModuleComponentSelector requested = componentSelectorSerializer.read(decoder);
+                ModuleComponentSelector requested = componentSelectorSerializer.read(decoder, moduleIdentifierFactory);
                 IvyArtifactName artifactName = IvyArtifactNameSerializer.INSTANCE.readNullable(decoder);
                 List<ExcludeMetadata> mavenExcludes = readMavenDependencyExcludes();
                 MavenScope scope = MavenScope.values()[decoder.readSmallInt()];
@@ -26,6 +26,7 @@
 import org.gradle.api.attributes.Attribute;
 import org.gradle.api.capabilities.Capability;
 import org.gradle.api.internal.artifacts.ComponentSelectorConverter;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
 import org.gradle.api.internal.artifacts.ResolvedVersionConstraint;
 import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
 import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionApplicator;
@@ -214,20 +215,19 @@ public void execute(Capability capability) {
                 // then we try to find a module which provides the same capability. It that module has been found, then we register it.
                 // Otherwise, we have nothing to do. This avoids most of registrations.
                 Collection<NodeState> implicitProvidersForCapability = Collections.emptyList();
-                for (ModuleResolveState state : resolveState.getModules()) {
-                    if (state.getId().getGroup().equals(capability.getGroup()) && state.getId().getName().equals(capability.getName())) {
-                        Collection<ComponentState> versions = state.getVersions();
-                        implicitProvidersForCapability = Lists.newArrayListWithExpectedSize(versions.size());
-                        for (ComponentState version : versions) {
-                            List<NodeState> nodes = version.getNodes();
-                            for (NodeState nodeState : nodes) {
-                                // Collect nodes as implicit capability providers if different than current node, selected and not having explicit capabilities
-                                if (node != nodeState && nodeState.isSelected() && doesNotDeclareExplicitCapability(nodeState)) {
-                                    implicitProvidersForCapability.add(nodeState);
-                                }
+                // Look the module up by identifier, rather than scanning all modules of the graph for every declared capability
+                ModuleResolveState state = resolveState.findModule(DefaultModuleIdentifier.newId(capability.getGroup(), capability.getName()));
+                if (state != null) {
+                    Collection<ComponentState> versions = state.getVersions();
+                    implicitProvidersForCapability = Lists.newArrayListWithExpectedSize(versions.size());
+                    for (ComponentState version : versions) {
+                        List<NodeState> nodes = version.getNodes();
+                        for (NodeState nodeState : nodes) {
+                            // Collect nodes as implicit capability providers if different than current node, selected and not having explicit capabilities
+                            if (node != nodeState && nodeState.isSelected() && doesNotDeclareExplicitCapability(nodeState)) {
+                                implicitProvidersForCapability.add(nodeState);
                             }
                         }
-                        break;
                     }
                 }
                 PotentialConflict c = capabilitiesConflictHandler.registerCandidate(
@@ -183,6 +183,14 @@ public ModuleResolveState getModule(ModuleIdentifier id) {
         return getModule(id, false);
     }
 
+    /**
+     * Returns the state of the given module, or {@code null} when the module has not been seen in the graph.
+     */
+    @Nullable
+    public ModuleResolveState findModule(ModuleIdentifier id) {
+        return modules.get(id);
+    }
+
     private ModuleResolveState getModule(ModuleIdentifier id, boolean rootModule) {
         return modules.computeIfAbsent(id, mid -> new ModuleResolveState(idGenerator, id, metaDataResolver, attributesFactory, versionComparator, versionParser, selectorStateResolver, resolveOptimizations, rootModule, conflictResolution));
     }
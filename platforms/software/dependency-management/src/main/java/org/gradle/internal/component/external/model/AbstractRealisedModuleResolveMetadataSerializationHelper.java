@@ -125,7 +125,7 @@ protected Map<String, List<GradleDependencyMetadata>> readVariantDependencies(De
     }
 
     protected GradleDependencyMetadata readDependencyMetadata(Decoder decoder) throws IOException {
-        ModuleComponentSelector selector = componentSelectorSerializer.read(decoder);
+        ModuleComponentSelector selector = componentSelectorSerializer.read(decoder, moduleIdentifierFactory);
         List<ExcludeMetadata> excludes = readMavenExcludes(decoder);
         boolean constraint = decoder.readBoolean();
         boolean endorsing = decoder.readBoolean();
@@ -19,10 +19,13 @@
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import org.apache.commons.lang.StringUtils;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.gradle.authentication.Authentication;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.verifier.HttpRedirectVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
@@ -34,8 +37,17 @@
 import java.util.Collection;
 
 public class DefaultHttpSettings implements HttpSettings {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultHttpSettings.class);
     private static final int DEFAULT_MAX_REDIRECTS = 10;
-    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    /**
+     * The maximum number of connections open at the same time, which bounds the number of concurrent requests.
+     */
+    public static final String MAX_CONNECTIONS_SYSTEM_PROPERTY = "org.gradle.internal.http.maxConnections";
+    /**
+     * The maximum number of connections open at the same time to a single host. Defaults to the maximum number of connections.
+     */
+    public static final String MAX_CONNECTIONS_PER_ROUTE_SYSTEM_PROPERTY = "org.gradle.internal.http.maxConnectionsPerRoute";
 
     private final Collection<Authentication> authenticationSettings;
     private final SslContextFactory sslContextFactory;
@@ -153,8 +165,8 @@ public static class Builder {
         private HostnameVerifier hostnameVerifier;
         private HttpRedirectVerifier redirectVerifier;
         private int maxRedirects = DEFAULT_MAX_REDIRECTS;
-        private int maxConnTotal = DEFAULT_MAX_CONNECTIONS;
-        private int maxConnPerRoute = DEFAULT_MAX_CONNECTIONS;
+        private int maxConnTotal = initMaxConnections(MAX_CONNECTIONS_SYSTEM_PROPERTY, DEFAULT_MAX_CONNECTIONS);
+        private int maxConnPerRoute = initMaxConnections(MAX_CONNECTIONS_PER_ROUTE_SYSTEM_PROPERTY, maxConnTotal);
         private RedirectMethodHandlingStrategy redirectMethodHandlingStrategy = RedirectMethodHandlingStrategy.ALWAYS_FOLLOW_AND_PRESERVE;
 
         public Builder withAuthenticationSettings(Collection<Authentication> authenticationSettings) {
@@ -205,6 +217,25 @@ public Builder withRedirectMethodHandlingStrategy(RedirectMethodHandlingStrategy
         public HttpSettings build() {
             return new DefaultHttpSettings(authenticationSettings, sslContextFactory, hostnameVerifier, redirectVerifier, redirectMethodHandlingStrategy, maxRedirects, maxConnTotal, maxConnPerRoute);
         }
+
+        private static int initMaxConnections(String propertyName, int defaultValue) {
+            String systemProperty = System.getProperty(propertyName);
+
+            if (!StringUtils.isBlank(systemProperty)) {
+                try {
+                    int maxConnections = Integer.parseInt(systemProperty);
+                    if (maxConnections > 0) {
+                        return maxConnections;
+                    }
+                } catch (NumberFormatException e) {
+                    // Fall through to the default value
+                }
+                LOGGER.warn("Invalid value for java system property '{}': {}. Default maximum number of connections '{}' will be used.",
+                    propertyName, systemProperty, defaultValue);
+            }
+
+            return defaultValue;
+        }
     }
 
     private static final HostnameVerifier ALL_TRUSTING_HOSTNAME_VERIFIER = new HostnameVerifier() {
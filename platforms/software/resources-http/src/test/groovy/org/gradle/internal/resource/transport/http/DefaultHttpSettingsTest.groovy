@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http
+
+import org.gradle.internal.verifier.HttpRedirectVerifier
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.internal.resource.transport.http.DefaultHttpSettings.DEFAULT_MAX_CONNECTIONS
+import static org.gradle.internal.resource.transport.http.DefaultHttpSettings.MAX_CONNECTIONS_PER_ROUTE_SYSTEM_PROPERTY
+import static org.gradle.internal.resource.transport.http.DefaultHttpSettings.MAX_CONNECTIONS_SYSTEM_PROPERTY
+
+class DefaultHttpSettingsTest extends Specification {
+
+    @Rule
+    SetSystemProperties setSystemProperties = new SetSystemProperties()
+
+    def "uses default maximum number of connections"() {
+        def settings = settings()
+
+        expect:
+        settings.maxConnTotal == DEFAULT_MAX_CONNECTIONS
+        settings.maxConnPerRoute == DEFAULT_MAX_CONNECTIONS
+    }
+
+    def "can configure maximum number of connections with system properties"() {
+        System.setProperty(MAX_CONNECTIONS_SYSTEM_PROPERTY, "64")
+        System.setProperty(MAX_CONNECTIONS_PER_ROUTE_SYSTEM_PROPERTY, "16")
+        def settings = settings()
+
+        expect:
+        settings.maxConnTotal == 64
+        settings.maxConnPerRoute == 16
+    }
+
+    def "maximum number of connections per route defaults to maximum number of connections"() {
+        System.setProperty(MAX_CONNECTIONS_SYSTEM_PROPERTY, "64")
+        def settings = settings()
+
+        expect:
+        settings.maxConnTotal == 64
+        settings.maxConnPerRoute == 64
+    }
+
+    def "uses default value if provided maximum number of connections is not valid"() {
+        System.setProperty(MAX_CONNECTIONS_SYSTEM_PROPERTY, value)
+        def settings = settings()
+
+        expect:
+        settings.maxConnTotal == DEFAULT_MAX_CONNECTIONS
+
+        where:
+        value << ["", "abc", "0", "-1"]
+    }
+
+    private HttpSettings settings() {
+        DefaultHttpSettings.builder()
+            .withAuthenticationSettings([])
+            .withSslContextFactory(Stub(SslContextFactory))
+            .withRedirectVerifier(Stub(HttpRedirectVerifier))
+            .build()
+    }
+}
@@ -1,5 +1,6 @@
 plugins {
     id("gradlebuild.distribution.api-java")
+    id("gradlebuild.jmh")
 }
 
 description = "Public and internal 'core' Gradle APIs with implementation"
@@ -214,6 +215,8 @@ dependencies {
     annotationProcessor(project(":internal-instrumentation-processor"))
     annotationProcessor(platform(project(":distributions-dependencies")))
 
+    jmhImplementation(platform(project(":distributions-dependencies")))
+
     testInterceptorsImplementation(platform(project(":distributions-dependencies")))
     "testInterceptorsAnnotationProcessor"(project(":internal-instrumentation-processor"))
     "testInterceptorsAnnotationProcessor"(platform(project(":distributions-dependencies")))
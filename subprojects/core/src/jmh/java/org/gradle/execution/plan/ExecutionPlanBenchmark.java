@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.Stat;
+import org.gradle.internal.resources.DefaultResourceLockCoordinationService;
+import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.snapshot.CaseSensitivity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building, finalizing and executing execution plans for large synthetic node graphs.
+ *
+ * Each phase is measured separately: the state for a phase sets up a fresh graph and runs the earlier phases before each invocation.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExecutionPlanBenchmark {
+
+    private static final Stat UNUSED_STAT = new Stat() {
+        @Override
+        public int getUnixMode(File f) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileMetadata stat(File f) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class GraphState {
+        @Param({"10000", "100000", "500000"})
+        int size;
+
+        @Param({"CHAINS", "FAN_OUT", "LAYERED", "FINALIZERS"})
+        SyntheticPlanGraph.Shape shape;
+
+        final ResourceLockCoordinationService coordinator = new DefaultResourceLockCoordinationService();
+        List<List<Node>> entryGroups;
+        DefaultExecutionPlan plan;
+
+        @Setup(Level.Invocation)
+        public void createGraph() {
+            entryGroups = SyntheticPlanGraph.create(shape, size);
+            ExecutionNodeAccessHierarchies accessHierarchies = new ExecutionNodeAccessHierarchies(CaseSensitivity.CASE_SENSITIVE, UNUSED_STAT);
+            plan = new DefaultExecutionPlan(
+                "benchmark",
+                // Only used to create nodes for tasks, the synthetic graph has none
+                null,
+                new OrdinalGroupFactory(),
+                new TaskDependencyResolver(Collections.emptyList()),
+                accessHierarchies.getOutputHierarchy(),
+                accessHierarchies.getDestroyableHierarchy(),
+                coordinator
+            );
+        }
+
+        void buildPlan() {
+            for (List<Node> entryNodes : entryGroups) {
+                plan.addEntryNodes(entryNodes);
+            }
+            plan.determineExecutionPlan();
+        }
+
+        @TearDown(Level.Invocation)
+        public void closePlan() {
+            plan.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BuiltPlanState {
+        @Setup(Level.Invocation)
+        public void buildPlan(GraphState graph) {
+            graph.buildPlan();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FinalizedPlanState {
+        WorkSource<Node> workSource;
+
+        @Setup(Level.Invocation)
+        public void finalizePlan(GraphState graph, BuiltPlanState builtPlan) {
+            workSource = graph.plan.finalizePlan().asWorkSource();
+        }
+    }
+
+    @Benchmark
+    public DefaultExecutionPlan buildPlan(GraphState graph) {
+        graph.buildPlan();
+        return graph.plan;
+    }
+
+    @Benchmark
+    public FinalizedExecutionPlan finalizePlan(GraphState graph, BuiltPlanState builtPlan) {
+        return graph.plan.finalizePlan();
+    }
+
+    @Benchmark
+    public int selectAllNodes(GraphState graph, FinalizedPlanState finalizedPlan) {
+        WorkSource<Node> workSource = finalizedPlan.workSource;
+        int selected = 0;
+        while (graph.coordinator.withStateLock(() -> selectAndFinishNext(workSource))) {
+            selected++;
+        }
+        return selected;
+    }
+
+    private static boolean selectAndFinishNext(WorkSource<Node> workSource) {
+        WorkSource.Selection<Node> selection = workSource.selectNext();
+        if (selection.isNoMoreWorkToStart()) {
+            return false;
+        }
+        if (selection.isNoWorkReadyToStart()) {
+            // Nodes are finished as soon as they are selected, so some node is always ready
+            throw new IllegalStateException("No node is ready to start.");
+        }
+        workSource.finishedExecuting(selection.getItem(), null);
+        return true;
+    }
+}
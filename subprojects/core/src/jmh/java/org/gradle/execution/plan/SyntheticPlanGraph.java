@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.api.internal.tasks.NodeExecutionContext;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates node graphs of a given shape and size for benchmarking execution plans.
+ *
+ * The nodes execute themselves and do nothing, so the benchmarks only measure the scheduling overhead.
+ */
+class SyntheticPlanGraph {
+    private static final int ENTRY_GROUPS = 4;
+    private static final int CHAIN_LENGTH = 1000;
+    private static final int FAN_OUT = 10_000;
+    private static final int LAYER_WIDTH = 1000;
+    private static final int LAYER_DEPENDENCIES = 4;
+    private static final int FINALIZED_EVERY = 10;
+
+    enum Shape {
+        /**
+         * Independent chains of nodes, each node depending on the next one.
+         */
+        CHAINS,
+        /**
+         * Nodes depending directly on a large number of leaf nodes.
+         */
+        FAN_OUT,
+        /**
+         * Layers of nodes, each node depending on a few random nodes of the layer below.
+         */
+        LAYERED,
+        /**
+         * Like {@link #LAYERED}, with some nodes finalized by a node that has a dependency of its own.
+         */
+        FINALIZERS
+    }
+
+    /**
+     * Creates a graph with roughly the given number of nodes, and returns its entry nodes split into several groups, as if several tasks were requested.
+     */
+    static List<List<Node>> create(Shape shape, int size) {
+        List<Node> entryNodes;
+        switch (shape) {
+            case CHAINS:
+                entryNodes = chains(size);
+                break;
+            case FAN_OUT:
+                entryNodes = fanOut(size);
+                break;
+            case LAYERED:
+                entryNodes = layers(size, false);
+                break;
+            case FINALIZERS:
+                entryNodes = layers(size, true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+        List<List<Node>> groups = new ArrayList<>(ENTRY_GROUPS);
+        for (int i = 0; i < ENTRY_GROUPS; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < entryNodes.size(); i++) {
+            groups.get(i % ENTRY_GROUPS).add(entryNodes.get(i));
+        }
+        return groups;
+    }
+
+    private static List<Node> chains(int size) {
+        List<Node> heads = new ArrayList<>();
+        int created = 0;
+        while (created < size) {
+            Node previous = null;
+            for (int i = 0; i < CHAIN_LENGTH && created < size; i++, created++) {
+                SyntheticNode node = new SyntheticNode("chain" + heads.size() + "-" + i);
+                if (previous != null) {
+                    node.addDependencySuccessor(previous);
+                }
+                previous = node;
+            }
+            heads.add(previous);
+        }
+        return heads;
+    }
+
+    private static List<Node> fanOut(int size) {
+        List<Node> roots = new ArrayList<>();
+        int created = 0;
+        while (created < size) {
+            SyntheticNode root = new SyntheticNode("root" + roots.size());
+            created++;
+            for (int i = 1; i < FAN_OUT && created < size; i++, created++) {
+                root.addDependencySuccessor(new SyntheticNode("leaf" + roots.size() + "-" + i));
+            }
+            roots.add(root);
+        }
+        return roots;
+    }
+
+    private static List<Node> layers(int size, boolean withFinalizers) {
+        Random random = new Random(42);
+        List<Node> previousLayer = new ArrayList<>();
+        List<Node> firstLayer = null;
+        int created = 0;
+        int layer = 0;
+        while (created < size) {
+            List<Node> currentLayer = new ArrayList<>(LAYER_WIDTH);
+            for (int i = 0; i < LAYER_WIDTH && created < size; i++, created++) {
+                SyntheticNode node = new SyntheticNode("layer" + layer + "-" + i);
+                for (int j = 0; j < LAYER_DEPENDENCIES && !previousLayer.isEmpty(); j++) {
+                    node.addDependencySuccessor(previousLayer.get(random.nextInt(previousLayer.size())));
+                }
+                if (withFinalizers && firstLayer != null && created % FINALIZED_EVERY == 0) {
+                    SyntheticNode finalizer = new SyntheticNode("finalizer" + layer + "-" + i);
+                    finalizer.addDependencySuccessor(firstLayer.get(random.nextInt(firstLayer.size())));
+                    node.addFinalizer(finalizer);
+                    created++;
+                }
+                currentLayer.add(node);
+            }
+            if (firstLayer == null) {
+                firstLayer = currentLayer;
+            }
+            previousLayer = currentLayer;
+            layer++;
+        }
+        return previousLayer;
+    }
+
+    private static class SyntheticNode extends CreationOrderedNode implements SelfExecutingNode {
+        private final String name;
+
+        SyntheticNode(String name) {
+            this.name = name;
+        }
+
+        @Nullable
+        @Override
+        public Throwable getNodeFailure() {
+            return null;
+        }
+
+        @Override
+        public void resolveDependencies(TaskDependencyResolver dependencyResolver) {
+        }
+
+        @Override
+        public void execute(NodeExecutionContext context) {
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
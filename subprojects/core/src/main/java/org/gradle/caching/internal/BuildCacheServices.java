@@ -28,9 +28,10 @@
 import org.gradle.caching.internal.controller.RootBuildCacheControllerRef;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCodec;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.DefaultTarPackerFileSystemSupport;
 import org.gradle.caching.internal.packaging.impl.FilePermissionAccess;
-import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarPackerFileSystemSupport;
 import org.gradle.caching.internal.services.BuildCacheControllerFactory;
@@ -39,6 +40,7 @@
 import org.gradle.caching.local.internal.DirectoryBuildCacheFileStoreFactory;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.BufferProvider;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.FileException;
@@ -74,6 +76,10 @@ BufferProvider createBufferProvider() {
                 // TODO Make buffer size configurable
                 return new ThreadLocalBufferProvider(64 * 1024);
             }
+
+            TarUnpackWriterPool createTarUnpackWriterPool(ExecutorFactory executorFactory) {
+                return new TarUnpackWriterPool(executorFactory);
+            }
         });
     }
 
@@ -141,10 +147,12 @@ BuildCacheEntryPacker createResultPacker(
                 FileSystem fileSystem,
                 StreamHasher fileHasher,
                 StringInterner stringInterner,
-                BufferProvider bufferProvider
+                BufferProvider bufferProvider,
+                TarUnpackWriterPool unpackWriterPool
             ) {
-                return new GZipBuildCacheEntryPacker(
-                    new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), fileHasher, stringInterner, bufferProvider));
+                return new CompressingBuildCacheEntryPacker(
+                    new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), fileHasher, stringInterner, bufferProvider, unpackWriterPool.getExecutor()),
+                    BuildCacheEntryCodec.fromSystemProperty());
             }
 
             BuildCacheController createBuildCacheController(
@@ -183,7 +191,8 @@ BuildCacheControllerFactory createBuildCacheControllerFactory(
                 TemporaryFileProvider temporaryFileProvider,
                 BuildCacheEntryPacker packer,
                 OriginMetadataFactory originMetadataFactory,
-                StringInterner stringInterner
+                StringInterner stringInterner,
+                ExecutorFactory executorFactory
             ) {
                 return new DefaultBuildCacheControllerFactory(
                     startParameter,
@@ -192,7 +201,8 @@ BuildCacheControllerFactory createBuildCacheControllerFactory(
                     originMetadataFactory,
                     stringInterner,
                     temporaryFileProvider,
-                    packer
+                    packer,
+                    executorFactory
                 );
             }
         });
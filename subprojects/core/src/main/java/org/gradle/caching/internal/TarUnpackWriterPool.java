@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.OptionalParallelExecutor;
+import org.gradle.internal.service.scopes.Scope;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+/**
+ * Bounded pool on which {@link org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker} writes the files of unpacked build cache entries.
+ * <p>
+ * Parallel unpacking is enabled by setting the {@value #PARALLELISM_PROPERTY} system property to the number of writer threads.
+ */
+@ServiceScope(Scope.Global.class)
+public class TarUnpackWriterPool extends OptionalParallelExecutor {
+    public static final String PARALLELISM_PROPERTY = "org.gradle.caching.unpack.parallelism";
+
+    public TarUnpackWriterPool(ExecutorFactory executorFactory) {
+        super(executorFactory, "Build cache unpack", Integer.getInteger(PARALLELISM_PROPERTY, 0));
+    }
+}
@@ -29,6 +29,7 @@
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheService;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.BuildOperationProgressEventEmitter;
 import org.gradle.util.Path;
@@ -40,6 +41,7 @@ public class DefaultBuildCacheControllerFactory extends AbstractBuildCacheContro
     private final TemporaryFileProvider temporaryFileProvider;
     private final BuildCacheEntryPacker packer;
     private final BuildOperationProgressEventEmitter buildOperationProgressEmitter;
+    private final ExecutorFactory executorFactory;
 
     public DefaultBuildCacheControllerFactory(
         StartParameter startParameter,
@@ -48,7 +50,8 @@ public DefaultBuildCacheControllerFactory(
         OriginMetadataFactory originMetadataFactory,
         StringInterner stringInterner,
         TemporaryFileProvider temporaryFileProvider,
-        BuildCacheEntryPacker packer
+        BuildCacheEntryPacker packer,
+        ExecutorFactory executorFactory
     ) {
         super(
             startParameter,
@@ -59,6 +62,7 @@ public DefaultBuildCacheControllerFactory(
         this.temporaryFileProvider = temporaryFileProvider;
         this.packer = packer;
         this.buildOperationProgressEmitter = buildOperationProgressEmitter;
+        this.executorFactory = executorFactory;
     }
 
     @Override
@@ -86,7 +90,8 @@ protected BuildCacheController doCreateController(
             !Boolean.getBoolean(REMOTE_CONTINUE_ON_ERROR_PROPERTY),
             packer,
             originMetadataFactory,
-            stringInterner
+            stringInterner,
+            executorFactory
         );
     }
 
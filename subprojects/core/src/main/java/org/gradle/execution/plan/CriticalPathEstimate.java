@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates, for each node of a plan, how long the longest chain of work that has to wait for the node takes.
+ *
+ * Ready nodes are then ordered by this estimate, so long chains start early rather than after the short leaf work that happens to come first in the plan.
+ * Estimates are based on the durations recorded in {@link TaskDurationHistory}, and are updated with the durations of the tasks executed by this plan.
+ */
+class CriticalPathEstimate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CriticalPathEstimate.class);
+
+    private final TaskDurationHistory history;
+    private final Map<Node, Long> remainingMillis;
+    private final long predictedMillis;
+    private final Map<Node, Long> startTimes = new IdentityHashMap<>();
+    private final Map<String, Long> executedDurations = new HashMap<>();
+    private long firstStart = -1;
+    private long lastFinish = -1;
+
+    private CriticalPathEstimate(TaskDurationHistory history, Map<Node, Long> remainingMillis, long predictedMillis) {
+        this.history = history;
+        this.remainingMillis = remainingMillis;
+        this.predictedMillis = predictedMillis;
+    }
+
+    /**
+     * Estimates the critical path for the given nodes, which are in execution order.
+     */
+    static CriticalPathEstimate estimate(List<Node> scheduledNodes, TaskDurationHistory history) {
+        Map<Node, Long> durations = new IdentityHashMap<>();
+        long knownTotal = 0;
+        for (Node node : scheduledNodes) {
+            if (node instanceof LocalTaskNode) {
+                Long duration = history.getDuration(taskPath((LocalTaskNode) node));
+                if (duration != null) {
+                    durations.put(node, duration);
+                    knownTotal += duration;
+                }
+            }
+        }
+        // Assume tasks that never executed before take as long as an average task
+        long unknownDuration = durations.isEmpty() ? 0 : knownTotal / durations.size();
+
+        // Nodes that depend on a node come after it in the plan, so walking backwards sees them first
+        Map<Node, Long> remaining = new IdentityHashMap<>();
+        long predicted = 0;
+        for (int i = scheduledNodes.size() - 1; i >= 0; i--) {
+            Node node = scheduledNodes.get(i);
+            long longestDependent = 0;
+            for (Node dependent : node.getDependencyPredecessors()) {
+                longestDependent = Math.max(longestDependent, remaining.getOrDefault(dependent, 0L));
+            }
+            long duration = node instanceof LocalTaskNode ? durations.getOrDefault(node, unknownDuration) : 0;
+            long nodeRemaining = duration + longestDependent;
+            remaining.put(node, nodeRemaining);
+            predicted = Math.max(predicted, nodeRemaining);
+        }
+        return new CriticalPathEstimate(history, remaining, predicted);
+    }
+
+    /**
+     * Orders nodes with a longer estimated remaining critical path first, falling back to {@link DefaultFinalizedExecutionPlan#NODE_EXECUTION_ORDER}.
+     */
+    Comparator<Node> executionOrder() {
+        return (node1, node2) -> {
+            if (node1.isPriority() != node2.isPriority()) {
+                return node1.isPriority() ? -1 : 1;
+            }
+            // Nodes added after planning, such as post-execution nodes, have no estimate
+            int byRemaining = Long.compare(remainingMillis.getOrDefault(node2, 0L), remainingMillis.getOrDefault(node1, 0L));
+            if (byRemaining != 0) {
+                return byRemaining;
+            }
+            return DefaultFinalizedExecutionPlan.NODE_EXECUTION_ORDER.compare(node1, node2);
+        };
+    }
+
+    void nodeStarted(Node node) {
+        long now = System.nanoTime();
+        if (firstStart < 0) {
+            firstStart = now;
+        }
+        startTimes.put(node, now);
+    }
+
+    void nodeFinished(Node node) {
+        long now = System.nanoTime();
+        lastFinish = now;
+        Long start = startTimes.remove(node);
+        if (start != null && node instanceof LocalTaskNode && node.isExecuted() && node.isSuccessful()) {
+            executedDurations.put(taskPath((LocalTaskNode) node), TimeUnit.NANOSECONDS.toMillis(now - start));
+        }
+    }
+
+    /**
+     * Reports the predicted against the actual execution time and records the durations of the executed tasks.
+     */
+    void complete(String displayName) {
+        if (firstStart >= 0) {
+            LOGGER.info("Critical path scheduling for {}: predicted {} ms, actual {} ms.", displayName, predictedMillis, TimeUnit.NANOSECONDS.toMillis(lastFinish - firstStart));
+        }
+        if (!executedDurations.isEmpty()) {
+            history.recordDurations(executedDurations);
+            executedDurations.clear();
+        }
+        startTimes.clear();
+    }
+
+    private static String taskPath(LocalTaskNode node) {
+        return node.getTask().getIdentityPath().toString();
+    }
+}
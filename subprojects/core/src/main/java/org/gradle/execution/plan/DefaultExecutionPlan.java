@@ -24,6 +24,7 @@
 import org.gradle.api.specs.Specs;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 
+import javax.annotation.Nullable;
 import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Collections;
@@ -61,6 +62,8 @@ public class DefaultExecutionPlan implements ExecutionPlan, QueryableExecutionPl
     private final Set<Node> filteredNodes = newIdentityHashSet();
     private final Set<Node> finalizers = new LinkedHashSet<>();
     private final OrdinalNodeAccess ordinalNodeAccess;
+    @Nullable
+    private final TaskDurationHistory durationHistory;
     private Consumer<LocalTaskNode> completionHandler = localTaskNode -> {
     };
 
@@ -76,6 +79,22 @@ public DefaultExecutionPlan(
         ExecutionNodeAccessHierarchy outputHierarchy,
         ExecutionNodeAccessHierarchy destroyableHierarchy,
         ResourceLockCoordinationService lockCoordinator
+    ) {
+        this(displayName, taskNodeFactory, ordinalGroupFactory, dependencyResolver, outputHierarchy, destroyableHierarchy, lockCoordinator, null);
+    }
+
+    /**
+     * @param durationHistory when not null, ready nodes are scheduled by their estimated remaining critical path.
+     */
+    public DefaultExecutionPlan(
+        String displayName,
+        TaskNodeFactory taskNodeFactory,
+        OrdinalGroupFactory ordinalGroupFactory,
+        TaskDependencyResolver dependencyResolver,
+        ExecutionNodeAccessHierarchy outputHierarchy,
+        ExecutionNodeAccessHierarchy destroyableHierarchy,
+        ResourceLockCoordinationService lockCoordinator,
+        @Nullable TaskDurationHistory durationHistory
     ) {
         this.displayName = displayName;
         this.taskNodeFactory = taskNodeFactory;
@@ -84,6 +103,7 @@ public DefaultExecutionPlan(
         this.destroyableHierarchy = destroyableHierarchy;
         this.lockCoordinator = lockCoordinator;
         this.ordinalNodeAccess = new OrdinalNodeAccess(ordinalGroupFactory);
+        this.durationHistory = durationHistory;
     }
 
     @Override
@@ -233,7 +253,7 @@ public FinalizedExecutionPlan finalizePlan() {
         if (finalizedPlan == null) {
             dependencyResolver.clear();
             // Should make an immutable copy of the contents to pass to the finalized plan and also to use in this instance
-            finalizedPlan = new DefaultFinalizedExecutionPlan(displayName, ordinalNodeAccess, outputHierarchy, destroyableHierarchy, lockCoordinator, scheduledNodes, continueOnFailure, this, completionHandler);
+            finalizedPlan = new DefaultFinalizedExecutionPlan(displayName, ordinalNodeAccess, outputHierarchy, destroyableHierarchy, lockCoordinator, scheduledNodes, continueOnFailure, this, completionHandler, durationHistory);
         }
         return finalizedPlan;
     }
@@ -49,6 +49,11 @@
 @NonNullApi
 public class DefaultFinalizedExecutionPlan implements WorkSource<Node>, FinalizedExecutionPlan {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFinalizedExecutionPlan.class);
+    /**
+     * How many ready nodes to look at when looking for a node from the project the selecting thread has just finished a node for.
+     * Keeps the cost of selection bounded and limits how far the affinity can move work ahead of the plan order.
+     */
+    private static final int PROJECT_AFFINITY_WINDOW = 64;
     public static final Comparator<Node> NODE_EXECUTION_ORDER = new Comparator<Node>() {
         @Override
         public int compare(Node node1, Node node2) {
@@ -67,7 +72,7 @@ public int compare(Node node1, Node node2) {
     };
 
     private final Set<Node> waitingToStartNodes = new HashSet<>();
-    private final ExecutionQueue readyNodes = new ExecutionQueue();
+    private final ExecutionQueue readyNodes;
     private final List<Throwable> failures = new ArrayList<>();
     private final List<DiagnosticEvent> diagnosticEvents = new ArrayList<>();
     private final String displayName;
@@ -81,9 +86,13 @@ public int compare(Node node1, Node node2) {
     private final QueryableExecutionPlan contents;
 
     private final Set<Node> runningNodes = newIdentityHashSet();
+    // The project lock of the node each thread has most recently finished, which the thread prefers to take again for its next node
+    private final Map<Thread, ResourceLock> lastProjectLocks = new HashMap<>();
     private final Map<Pair<Node, Node>, Boolean> reachableCache = new HashMap<>();
     private final OrdinalNodeAccess ordinalNodeAccess;
     private final Consumer<LocalTaskNode> completionHandler;
+    @Nullable
+    private final CriticalPathEstimate criticalPath;
 
     // When true, there may be nodes that are both ready and "selectable", which means their project and resources are able to be locked
     // When false, there are definitely no nodes that are "selectable"
@@ -100,7 +109,8 @@ public DefaultFinalizedExecutionPlan(
         List<Node> scheduledNodes,
         boolean continueOnFailure,
         QueryableExecutionPlan contents,
-        Consumer<LocalTaskNode> completionHandler
+        Consumer<LocalTaskNode> completionHandler,
+        @Nullable TaskDurationHistory durationHistory
     ) {
         this.displayName = displayName;
         this.outputHierarchy = outputHierarchy;
@@ -110,6 +120,8 @@ public DefaultFinalizedExecutionPlan(
         this.continueOnFailure = continueOnFailure;
         this.contents = contents;
         this.completionHandler = completionHandler;
+        this.criticalPath = durationHistory == null ? null : CriticalPathEstimate.estimate(scheduledNodes, durationHistory);
+        this.readyNodes = new ExecutionQueue(criticalPath == null ? NODE_EXECUTION_ORDER : criticalPath.executionOrder());
 
         SetMultimap<FinalizerGroup, FinalizerGroup> reachableGroups = LinkedHashMultimap.create();
         for (Node node : scheduledNodes) {
@@ -147,10 +159,14 @@ public WorkSource<Node> asWorkSource() {
     @Override
     public void close() {
         lockCoordinator.removeLockReleaseListener(resourceUnlockListener);
+        if (criticalPath != null) {
+            criticalPath.complete(displayName);
+        }
         waitingToStartNodes.clear();
         readyNodes.clear();
         runningNodes.clear();
         reachableCache.clear();
+        lastProjectLocks.clear();
     }
 
     private void resourceUnlocked(ResourceLock resourceLock) {
@@ -238,6 +254,11 @@ public Selection<Node> selectNext() {
         }
 
         List<ResourceLock> resources = new ArrayList<>();
+        Node sameProjectNode = selectNodeFromLastProject(resources);
+        if (sameProjectNode != null) {
+            return Selection.of(sameProjectNode);
+        }
+
         readyNodes.restart();
         while (readyNodes.hasNext()) {
             Node node = readyNodes.next();
@@ -278,8 +299,7 @@ public Selection<Node> selectNext() {
                 // Node is ready to execute and all dependencies and pre-execution nodes have completed
                 if (attemptToStart(node, resources)) {
                     readyNodes.remove();
-                    waitingToStartNodes.remove(node);
-                    node.getMutationInfo().started();
+                    nodeStarted(node);
                     return Selection.of(node);
                 }
             }
@@ -302,6 +322,43 @@ public Selection<Node> selectNext() {
         return Selection.noWorkReadyToStart();
     }
 
+    /**
+     * Attempts to start a ready node that requires the project lock of the node this thread has just finished, so that the thread keeps working on the same project
+     * instead of handing the project lock over to another thread. Other nodes are left for the regular selection, which takes work from any project.
+     * <p>
+     * Not used when scheduling by critical path, as the affinity would start nodes ahead of those with a longer remaining critical path.
+     */
+    @Nullable
+    private Node selectNodeFromLastProject(List<ResourceLock> resources) {
+        ResourceLock lastProjectLock = lastProjectLocks.remove(Thread.currentThread());
+        if (lastProjectLock == null || criticalPath != null) {
+            return null;
+        }
+        readyNodes.restart();
+        for (int i = 0; i < PROJECT_AFFINITY_WINDOW && readyNodes.hasNext(); i++) {
+            Node node = readyNodes.next();
+            if (node.isPriority()) {
+                // Priority nodes always go first
+                return null;
+            }
+            if (node.getProjectToLock() != lastProjectLock) {
+                continue;
+            }
+            // Nodes that need more work before they can start are left for the regular selection
+            if (node.allDependenciesComplete() && node.allDependenciesSuccessful() && !node.hasPendingPreExecutionNodes() && attemptToStart(node, resources)) {
+                readyNodes.remove();
+                nodeStarted(node);
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void nodeStarted(Node node) {
+        waitingToStartNodes.remove(node);
+        node.getMutationInfo().started();
+    }
+
     private void addNodeToPlan(Node node) {
         maybeNodeReady(node);
         maybeWaitingForNewNode(node, "runtime");
@@ -381,6 +438,7 @@ private void unlockProjectFor(Node node) {
         ResourceLock toUnlock = node.getProjectToLock();
         if (toUnlock != null) {
             toUnlock.unlock();
+            lastProjectLocks.put(Thread.currentThread(), toUnlock);
         }
     }
 
@@ -506,6 +564,9 @@ private boolean doesConsumerDependOnDestroyer(Node consumer, Node destroyer) {
 
     private void recordNodeExecutionStarted(Node node) {
         runningNodes.add(node);
+        if (criticalPath != null) {
+            criticalPath.nodeStarted(node);
+        }
     }
 
     private void recordNodeCompleted(Node node) {
@@ -560,6 +621,9 @@ public void finishedExecuting(Node node, @Nullable Throwable failure) {
             }
 
             node.finishExecution(this::recordNodeCompleted);
+            if (criticalPath != null) {
+                criticalPath.nodeFinished(node);
+            }
             if (node.isFailed()) {
                 LOGGER.debug("Node {} failed", node);
                 handleFailure(node);
@@ -679,12 +743,16 @@ public boolean allExecutionComplete() {
     }
 
     /**
-     * An ordered queue of nodes, sorted by {@link #NODE_EXECUTION_ORDER}.
+     * An ordered queue of nodes, sorted by {@link #NODE_EXECUTION_ORDER} unless scheduling by critical path.
      */
     static class ExecutionQueue {
-        private final Set<Node> nodes = new TreeSet<>(NODE_EXECUTION_ORDER);
+        private final Set<Node> nodes;
         private Iterator<Node> current;
 
+        ExecutionQueue(Comparator<Node> executionOrder) {
+            this.nodes = new TreeSet<>(executionOrder);
+        }
+
         public void clear() {
             nodes.clear();
             current = null;
@@ -23,6 +23,7 @@
 import org.gradle.concurrent.ParallelismConfiguration;
 import org.gradle.initialization.BuildCancellationToken;
 import org.gradle.internal.Cast;
+import org.gradle.internal.MutableBoolean;
 import org.gradle.internal.MutableReference;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.build.ExecutionResult;
@@ -33,7 +34,9 @@
 import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.logging.text.TreeFormatter;
+import org.gradle.internal.resources.ResourceLock;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.resources.ResourceLockState;
 import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
 import org.gradle.internal.work.WorkerLeaseService;
 
@@ -370,14 +373,17 @@ public void run() {
                     releaseLeaseOnCompletion = false;
                 }
 
-                while (true) {
-                    WorkItem workItem = getNextItem(workerLease);
-                    if (workItem == null) {
-                        break;
-                    }
+                WorkItem workItem = getNextItem(workerLease);
+                while (workItem != null) {
                     Object selected = workItem.selection.getItem();
                     LOGGER.info("{} ({}) started.", selected, Thread.currentThread());
-                    execute(selected, workItem.plan, workItem.executor);
+                    stats.started(selected);
+                    MutableReference<WorkItem> next = MutableReference.empty();
+                    if (execute(selected, workItem.plan, workItem.executor, next)) {
+                        workItem = next.get();
+                    } else {
+                        workItem = getNextItem(workerLease);
+                    }
                 }
 
                 if (releaseLeaseOnCompletion) {
@@ -400,81 +406,98 @@ private WorkItem getNextItem(final WorkerLease workerLease) {
             stats.startSelect();
             try {
                 selected = MutableReference.empty();
+                stats.startWaitingForStateLock();
                 coordinationService.withStateLock(resourceLockState -> {
+                    stats.finishWaitingForStateLock();
                     stats.finishWaitingForNextItem();
-                    if (cancellationToken.isCancellationRequested()) {
-                        queue.cancelExecution();
-                    }
+                    return selectNext(workerLease, resourceLockState, selected);
+                });
+            } finally {
+                stats.finishSelect();
+            }
 
-                    WorkSource.State state = queue.executionState();
-                    if (state == WorkSource.State.NoMoreWorkToStart) {
-                        return FINISHED;
-                    }
+            return selected.get();
+        }
 
-                    if (!workerLease.tryLock()) {
-                        // Cannot get a lease to run work
-                        // Do not call `startWaitingForNextItem()` as there may be work available but this worker cannot start it, and so should not be considered "waiting for work".
-                        // The health monitoring is currently only concerned with whether work can be started.
-                        // At some point it could be improved to track the health of all worker threads, not just the plan executor threads
-                        return RETRY;
-                    }
+        /**
+         * Attempts to select an item that's ready to execute. Must be called while holding the state lock.
+         *
+         * @return {@link ResourceLockState.Disposition#FINISHED} when selection is done, with the selected item in {@code selected} or none when there are no items remaining,
+         * or {@link ResourceLockState.Disposition#RETRY} when no item can be started right now.
+         */
+        private ResourceLockState.Disposition selectNext(WorkerLease workerLease, ResourceLockState resourceLockState, MutableReference<WorkItem> selected) {
+            if (cancellationToken.isCancellationRequested()) {
+                queue.cancelExecution();
+            }
 
-                    if (state == WorkSource.State.NoWorkReadyToStart) {
-                        stats.startWaitingForNextItem();
-                        // Release worker lease while waiting
-                        workerLease.unlock();
-                        return RETRY;
-                    }
+            WorkSource.State state = queue.executionState();
+            if (state == WorkSource.State.NoMoreWorkToStart) {
+                return FINISHED;
+            }
 
-                    // Have a worker lease and work may be available
+            if (!workerLease.tryLock()) {
+                // Cannot get a lease to run work
+                // Do not call `startWaitingForNextItem()` as there may be work available but this worker cannot start it, and so should not be considered "waiting for work".
+                // The health monitoring is currently only concerned with whether work can be started.
+                // At some point it could be improved to track the health of all worker threads, not just the plan executor threads
+                return RETRY;
+            }
 
-                    WorkSource.Selection<WorkItem> workItem;
-                    try {
-                        workItem = queue.selectNext();
-                    } catch (Throwable t) {
-                        resourceLockState.releaseLocks();
-                        queue.abortAllAndFail(t);
-                        return FINISHED;
-                    }
-                    if (workItem.isNoMoreWorkToStart()) {
-                        return FINISHED;
-                    } else if (workItem.isNoWorkReadyToStart()) {
-                        stats.startWaitingForNextItem();
-                        // Release worker lease while waiting
-                        workerLease.unlock();
-                        return RETRY;
-                    }
+            if (state == WorkSource.State.NoWorkReadyToStart) {
+                stats.startWaitingForNextItem();
+                // Release worker lease while waiting
+                workerLease.unlock();
+                return RETRY;
+            }
 
-                    selected.set(workItem.getItem());
-                    return FINISHED;
-                });
-            } finally {
-                stats.finishSelect();
+            // Have a worker lease and work may be available
+
+            WorkSource.Selection<WorkItem> workItem;
+            try {
+                workItem = queue.selectNext();
+            } catch (Throwable t) {
+                resourceLockState.releaseLocks();
+                queue.abortAllAndFail(t);
+                return FINISHED;
+            }
+            if (workItem.isNoMoreWorkToStart()) {
+                return FINISHED;
+            } else if (workItem.isNoWorkReadyToStart()) {
+                stats.startWaitingForNextItem();
+                // Release worker lease while waiting
+                workerLease.unlock();
+                return RETRY;
             }
 
-            return selected.get();
+            selected.set(workItem.getItem());
+            return FINISHED;
         }
 
-        private void execute(Object selected, WorkSource<Object> executionPlan, Action<Object> worker) {
+        /**
+         * Executes the given item, and selects the next item to execute while still holding the state lock to mark the item finished.
+         *
+         * @return whether selection of the next item is done, with the selected item in {@code next} or none when there are no items remaining.
+         */
+        private boolean execute(Object selected, WorkSource<Object> executionPlan, Action<Object> worker, MutableReference<WorkItem> next) {
             Throwable failure = null;
+            stats.startExecute();
             try {
-                stats.startExecute();
-                try {
-                    worker.execute(selected);
-                } catch (Throwable t) {
-                    failure = t;
-                } finally {
-                    stats.finishExecute();
-                }
+                worker.execute(selected);
+            } catch (Throwable t) {
+                failure = t;
             } finally {
-                markFinished(selected, executionPlan, failure);
+                stats.finishExecute();
             }
+            return markFinishedAndSelectNext(selected, executionPlan, failure, next);
         }
 
-        private void markFinished(Object selected, WorkSource<Object> executionPlan, @Nullable Throwable failure) {
+        private boolean markFinishedAndSelectNext(Object selected, WorkSource<Object> executionPlan, @Nullable Throwable failure, MutableReference<WorkItem> next) {
             stats.startMarkFinished();
             try {
-                coordinationService.withStateLock(() -> {
+                MutableBoolean selectionDone = new MutableBoolean();
+                stats.startWaitingForStateLock();
+                coordinationService.withStateLock(resourceLockState -> {
+                    stats.finishWaitingForStateLock();
                     try {
                         executionPlan.finishedExecuting(selected, failure);
                     } catch (Throwable t) {
@@ -483,7 +506,12 @@ private void markFinished(Object selected, WorkSource<Object> executionPlan, @Nu
                     // Notify other threads that the item is finished as this may unblock further work
                     // or this might be the last item in the queue
                     coordinationService.notifyStateChange();
+                    // Select the next item under the same lock, rather than competing for the lock again right away.
+                    // When nothing can be started right now, fall back to waiting for work in getNextItem()
+                    selectionDone.set(selectNext(workerLease, resourceLockState, next) == FINISHED);
+                    return FINISHED;
                 });
+                return selectionDone.get();
             } finally {
                 stats.finishMarkFinished();
             }
@@ -524,6 +552,21 @@ private interface WorkerStats extends WorkerState {
 
         void finishMarkFinished();
 
+        /**
+         * Called when the worker starts the given item.
+         */
+        void started(Object item);
+
+        /**
+         * Called before waiting to acquire the state lock.
+         */
+        void startWaitingForStateLock();
+
+        /**
+         * Called once the state lock is held. May be called multiple times per {@link #startWaitingForStateLock()}, when the state lock action is retried.
+         */
+        void finishWaitingForStateLock();
+
         void finish();
     }
 
@@ -630,6 +673,18 @@ public void startMarkFinished() {
             public void finishMarkFinished() {
             }
 
+            @Override
+            public void started(Object item) {
+            }
+
+            @Override
+            public void startWaitingForStateLock() {
+            }
+
+            @Override
+            public void finishWaitingForStateLock() {
+            }
+
             @Override
             public void finish() {
                 state.set(ExecutionState.Stopped);
@@ -678,6 +733,9 @@ public void report() {
                 LOGGER.lifecycle("average select time: " + format(stats -> stats.totalSelectTime));
                 LOGGER.lifecycle("average execute time: " + format(stats -> stats.totalExecuteTime));
                 LOGGER.lifecycle("average finish time: " + format(stats -> stats.totalMarkFinishedTime));
+                LOGGER.lifecycle("average state lock wait time: " + format(stats -> stats.totalStateLockWaitTime));
+                LOGGER.lifecycle("average idle time: " + format(stats -> stats.totalIdleTime));
+                LOGGER.lifecycle("project lock handoffs: " + completedWorkers.stream().mapToLong(stats -> stats.projectLockHandoffs).sum());
             }
             completedWorkers.clear();
         }
@@ -694,9 +752,16 @@ private static class CollectingWorkerStats implements WorkerStats {
         private final WorkerState delegate;
         long finishTime;
         long startCurrentOperation;
+        long startWaitingForStateLock;
+        long startWaitingForNextItem;
         long totalSelectTime;
         long totalExecuteTime;
         long totalMarkFinishedTime;
+        long totalStateLockWaitTime;
+        long totalIdleTime;
+        long projectLockHandoffs;
+        @Nullable
+        ResourceLock lastProjectLock;
 
         public CollectingWorkerStats(CollectingExecutorStats owner, WorkerState delegate) {
             this.owner = owner;
@@ -748,14 +813,51 @@ public void finishMarkFinished() {
             }
         }
 
+        @Override
+        public void startWaitingForStateLock() {
+            startWaitingForStateLock = System.nanoTime();
+        }
+
+        @Override
+        public void finishWaitingForStateLock() {
+            // Only count the first acquisition, later ones are retries after waiting for a state change
+            if (startWaitingForStateLock != 0) {
+                long duration = System.nanoTime() - startWaitingForStateLock;
+                if (duration > 0) {
+                    totalStateLockWaitTime += duration;
+                }
+                startWaitingForStateLock = 0;
+            }
+        }
+
+        @Override
+        public void started(Object item) {
+            ResourceLock projectLock = item instanceof Node ? ((Node) item).getProjectToLock() : null;
+            if (projectLock != null) {
+                // The worker moves to another project, so both project locks change hands
+                if (lastProjectLock != null && lastProjectLock != projectLock) {
+                    projectLockHandoffs++;
+                }
+                lastProjectLock = projectLock;
+            }
+        }
+
         @Override
         public void startWaitingForNextItem() {
             delegate.startWaitingForNextItem();
+            startWaitingForNextItem = System.nanoTime();
         }
 
         @Override
         public void finishWaitingForNextItem() {
             delegate.finishWaitingForNextItem();
+            if (startWaitingForNextItem != 0) {
+                long duration = System.nanoTime() - startWaitingForNextItem;
+                if (duration > 0) {
+                    totalIdleTime += duration;
+                }
+                startWaitingForNextItem = 0;
+            }
         }
     }
 }
@@ -29,6 +29,7 @@ public class ExecutionPlanFactory {
     private final ExecutionNodeAccessHierarchy outputHierarchy;
     private final ExecutionNodeAccessHierarchy destroyableHierarchy;
     private final ResourceLockCoordinationService lockCoordinationService;
+    private final TaskDurationHistory durationHistory;
 
     public ExecutionPlanFactory(
         String displayName,
@@ -37,7 +38,8 @@ public ExecutionPlanFactory(
         TaskDependencyResolver dependencyResolver,
         ExecutionNodeAccessHierarchy outputHierarchy,
         ExecutionNodeAccessHierarchy destroyableHierarchy,
-        ResourceLockCoordinationService lockCoordinationService
+        ResourceLockCoordinationService lockCoordinationService,
+        TaskDurationHistory durationHistory
     ) {
         this.displayName = displayName;
         this.taskNodeFactory = taskNodeFactory;
@@ -46,9 +48,11 @@ public ExecutionPlanFactory(
         this.outputHierarchy = outputHierarchy;
         this.destroyableHierarchy = destroyableHierarchy;
         this.lockCoordinationService = lockCoordinationService;
+        this.durationHistory = durationHistory;
     }
 
     public ExecutionPlan createPlan() {
-        return new DefaultExecutionPlan(displayName, taskNodeFactory, ordinalGroupFactory, dependencyResolver, outputHierarchy, destroyableHierarchy, lockCoordinationService);
+        return new DefaultExecutionPlan(displayName, taskNodeFactory, ordinalGroupFactory, dependencyResolver, outputHierarchy, destroyableHierarchy, lockCoordinationService,
+            TaskDurationHistory.isCriticalPathSchedulingEnabled() ? durationHistory : null);
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.IndexedCache;
+import org.gradle.cache.IndexedCacheParameters;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.scopes.BuildScopedCacheBuilderFactory;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.service.scopes.Scopes;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Map;
+
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * Remembers how long tasks took to execute in previous builds, keyed by task identity path.
+ *
+ * Used to estimate the critical path of an execution plan, see {@link #CRITICAL_PATH_SCHEDULING_PROPERTY}.
+ */
+@ServiceScope(Scopes.Build.class)
+public class TaskDurationHistory implements Closeable {
+    /**
+     * Prefers ready nodes with the longest estimated chain of work remaining behind them, instead of plan order.
+     */
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.internal.execution.critical-path-scheduling";
+
+    private final BuildScopedCacheBuilderFactory cacheBuilderFactory;
+    private PersistentCache cache;
+    private IndexedCache<String, Long> durations;
+
+    public TaskDurationHistory(BuildScopedCacheBuilderFactory cacheBuilderFactory) {
+        this.cacheBuilderFactory = cacheBuilderFactory;
+    }
+
+    public static boolean isCriticalPathSchedulingEnabled() {
+        return Boolean.getBoolean(CRITICAL_PATH_SCHEDULING_PROPERTY);
+    }
+
+    /**
+     * Returns the duration in milliseconds the given task took the last times it executed, or {@code null} if it did not execute before.
+     */
+    @Nullable
+    public synchronized Long getDuration(String taskPath) {
+        return getDurations().getIfPresent(taskPath);
+    }
+
+    /**
+     * Records the durations in milliseconds the given tasks took to execute, blending them with earlier durations to smooth out outliers.
+     */
+    public synchronized void recordDurations(Map<String, Long> taskDurations) {
+        IndexedCache<String, Long> durations = getDurations();
+        for (Map.Entry<String, Long> entry : taskDurations.entrySet()) {
+            Long previous = durations.getIfPresent(entry.getKey());
+            long duration = previous == null ? entry.getValue() : (previous + entry.getValue()) / 2;
+            durations.put(entry.getKey(), duration);
+        }
+    }
+
+    private IndexedCache<String, Long> getDurations() {
+        if (durations == null) {
+            cache = cacheBuilderFactory
+                .createCacheBuilder("taskDurations")
+                .withDisplayName("task duration history")
+                .withLockOptions(mode(FileLockManager.LockMode.OnDemand))
+                .open();
+            durations = cache.createIndexedCache(IndexedCacheParameters.of("taskDurations", String.class, BaseSerializerFactory.LONG_SERIALIZER));
+        }
+        return durations;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (cache != null) {
+            cache.close();
+            cache = null;
+            durations = null;
+        }
+    }
+}
@@ -108,6 +108,7 @@
 import org.gradle.execution.plan.ExecutionPlanFactory;
 import org.gradle.execution.plan.OrdinalGroupFactory;
 import org.gradle.execution.plan.TaskDependencyResolver;
+import org.gradle.execution.plan.TaskDurationHistory;
 import org.gradle.execution.plan.TaskNodeDependencyResolver;
 import org.gradle.execution.plan.TaskNodeFactory;
 import org.gradle.execution.plan.ToPlannedNodeConverterRegistry;
@@ -264,7 +265,8 @@ ExecutionPlanFactory createExecutionPlanFactory(
         OrdinalGroupFactory ordinalGroupFactory,
         TaskDependencyResolver dependencyResolver,
         ExecutionNodeAccessHierarchies executionNodeAccessHierarchies,
-        ResourceLockCoordinationService lockCoordinationService
+        ResourceLockCoordinationService lockCoordinationService,
+        TaskDurationHistory taskDurationHistory
     ) {
         return new ExecutionPlanFactory(
             build.getDisplayName().getDisplayName(),
@@ -273,10 +275,15 @@ ExecutionPlanFactory createExecutionPlanFactory(
             dependencyResolver,
             executionNodeAccessHierarchies.getOutputHierarchy(),
             executionNodeAccessHierarchies.getDestroyableHierarchy(),
-            lockCoordinationService
+            lockCoordinationService,
+            taskDurationHistory
         );
     }
 
+    TaskDurationHistory createTaskDurationHistory(BuildScopedCacheBuilderFactory cacheBuilderFactory) {
+        return new TaskDurationHistory(cacheBuilderFactory);
+    }
+
     ExecutionNodeAccessHierarchies createExecutionNodeAccessHierarchies(FileSystem fileSystem, Stat stat) {
         return new ExecutionNodeAccessHierarchies(fileSystem.isCaseSensitive() ? CaseSensitivity.CASE_SENSITIVE : CaseSensitivity.CASE_INSENSITIVE, stat);
     }
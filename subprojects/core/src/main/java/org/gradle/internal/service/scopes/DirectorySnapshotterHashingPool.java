@@ -0,0 +1,35 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.service.scopes;
+
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.OptionalParallelExecutor;
+
+/**
+ * Bounded pool on which {@link org.gradle.internal.snapshot.impl.DirectorySnapshotter} hashes files while it traverses directories,
+ * and on which the chunks of large files are hashed when the file content hash mode chunks them.
+ * <p>
+ * Parallel hashing is enabled by setting the {@value #PARALLELISM_PROPERTY} system property to the number of hashing threads.
+ */
+@ServiceScope(Scope.Global.class)
+public class DirectorySnapshotterHashingPool extends OptionalParallelExecutor {
+    public static final String PARALLELISM_PROPERTY = "org.gradle.vfs.snapshot.parallelism";
+
+    public DirectorySnapshotterHashingPool(ExecutorFactory executorFactory) {
+        super(executorFactory, "File hashing", Integer.getInteger(PARALLELISM_PROPERTY, 0));
+    }
+}
@@ -48,6 +48,7 @@
 import org.gradle.internal.buildoption.InternalFlag;
 import org.gradle.internal.buildoption.InternalOptions;
 import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.FileCollectionFingerprinterRegistry;
 import org.gradle.internal.execution.FileCollectionSnapshotter;
@@ -66,6 +67,7 @@
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionSnapshotter;
 import org.gradle.internal.fingerprint.impl.FileCollectionFingerprinterRegistrations;
 import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.FileContentHashMode;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.StreamHasher;
@@ -92,6 +94,7 @@
 import org.gradle.internal.watch.vfs.WatchableFileSystemDetector;
 import org.gradle.internal.watch.vfs.impl.DefaultWatchableFileSystemDetector;
 import org.gradle.internal.watch.vfs.impl.FileWatchingFilter;
+import org.gradle.internal.watch.vfs.impl.VirtualFileSystemStateStore;
 import org.gradle.internal.watch.vfs.impl.WatchingNotSupportedVirtualFileSystem;
 import org.gradle.internal.watch.vfs.impl.WatchingVirtualFileSystem;
 import org.slf4j.Logger;
@@ -149,6 +152,10 @@ FileHasherStatistics.Collector createCachingFileHasherStatisticsCollector() {
         DirectorySnapshotterStatistics.Collector createDirectorySnapshotterStatisticsCollector() {
             return new DirectorySnapshotterStatistics.Collector();
         }
+
+        DirectorySnapshotterHashingPool createDirectorySnapshotterHashingPool(ExecutorFactory executorFactory) {
+            return new DirectorySnapshotterHashingPool(executorFactory);
+        }
     }
 
     @VisibleForTesting
@@ -164,9 +171,10 @@ FileHasher createCachingFileHasher(
             FileSystem fileSystem,
             GradleUserHomeScopeFileTimeStampInspector fileTimeStampInspector,
             StreamHasher streamHasher,
-            StringInterner stringInterner
+            StringInterner stringInterner,
+            DirectorySnapshotterHashingPool hashingPool
         ) {
-            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher, FileContentHashMode.current(), hashingPool.getExecutor()), fileStore, stringInterner, fileTimeStampInspector, FileContentHashMode.current().getCacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
             fileTimeStampInspector.attach(fileHasher);
             return fileHasher;
         }
@@ -200,7 +208,8 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
             ListenerManager listenerManager,
             FileChangeListeners fileChangeListeners,
             FileSystem fileSystem,
-            WatchableFileSystemDetector watchableFileSystemDetector
+            WatchableFileSystemDetector watchableFileSystemDetector,
+            GlobalScopedCacheBuilderFactory cacheBuilderFactory
         ) {
             CaseSensitivity caseSensitivity = fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE;
             SnapshotHierarchy root = DefaultSnapshotHierarchy.empty(caseSensitivity);
@@ -215,7 +224,8 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
                     sectionId -> documentationRegistry.getDocumentationRecommendationFor("details", "gradle_daemon", sectionId),
                     fileWatchingFilter,
                     watchableFileSystemDetector,
-                    fileChangeListeners
+                    fileChangeListeners,
+                    VirtualFileSystemStateStore.fromSystemProperty(cacheBuilderFactory.baseDirForCache("vfs-state"))
                 ))
                 .orElse(new WatchingNotSupportedVirtualFileSystem(root));
             listenerManager.addListener((BuildAddedListener) buildState -> {
@@ -233,6 +243,7 @@ FileSystemAccess createFileSystemAccess(
             StringInterner stringInterner,
             FileSystemAccess.WriteListener writeListener,
             DirectorySnapshotterStatistics.Collector statisticsCollector,
+            DirectorySnapshotterHashingPool hashingPool,
             ListenerManager listenerManager
         ) {
             DefaultFileSystemAccess defaultFileSystemAccess = new DefaultFileSystemAccess(
@@ -242,6 +253,7 @@ FileSystemAccess createFileSystemAccess(
                 virtualFileSystem,
                 writeListener,
                 statisticsCollector,
+                hashingPool.getExecutor(),
                 DirectoryScanner.getDefaultExcludes()
             );
             listenerManager.addListener(defaultFileSystemAccess);
@@ -315,9 +327,10 @@ FileHasher createFileHasher(
             FileSystem fileSystem,
             StreamHasher streamHasher,
             StringInterner stringInterner,
-            FileHasherStatistics.Collector statisticsCollector
+            FileHasherStatistics.Collector statisticsCollector,
+            DirectorySnapshotterHashingPool hashingPool
         ) {
-            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher, FileContentHashMode.current(), hashingPool.getExecutor()), cacheAccess, stringInterner, fileTimeStampInspector, FileContentHashMode.current().getCacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
             return new SplitFileHasher(globalHasher, localHasher, globalCacheLocations);
         }
 
@@ -328,7 +341,8 @@ FileSystemAccess createFileSystemAccess(
             StringInterner stringInterner,
             VirtualFileSystem root,
             FileSystemAccess.WriteListener writeListener,
-            DirectorySnapshotterStatistics.Collector statisticsCollector
+            DirectorySnapshotterStatistics.Collector statisticsCollector,
+            DirectorySnapshotterHashingPool hashingPool
         ) {
             DefaultFileSystemAccess buildSessionsScopedVirtualFileSystem = new DefaultFileSystemAccess(
                 hasher,
@@ -337,6 +351,7 @@ FileSystemAccess createFileSystemAccess(
                 root,
                 writeListener,
                 statisticsCollector,
+                hashingPool.getExecutor(),
                 DirectoryScanner.getDefaultExcludes()
             );
 
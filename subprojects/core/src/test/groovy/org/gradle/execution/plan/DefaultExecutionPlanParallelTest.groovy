@@ -122,6 +122,38 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
         assertAllWorkComplete()
     }
 
+    def "starts the task with the longest remaining critical path first when scheduling by critical path"() {
+        given:
+        def durationHistory = Stub(TaskDurationHistory) {
+            getDuration(":a") >> 1000L
+            getDuration(":b") >> 100L
+            getDuration(":c") >> 5000L
+        }
+        def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
+        executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, new OrdinalGroupFactory(), dependencyResolver, accessHierarchies.outputHierarchy, accessHierarchies.destroyableHierarchy, coordinator, durationHistory)
+        Task a = task("a", type: Async)
+        Task b = task("b", type: Async)
+        Task c = task("c", type: Async, dependsOn: [b])
+
+        when:
+        addToGraphAndPopulate(a, c)
+        def first = selectNextTaskNode()
+        def second = selectNextTaskNode()
+
+        then:
+        executionPlan.tasks as List == [a, b, c]
+        first.task == b
+        second.task == a
+
+        when:
+        finishedExecuting(first)
+
+        then:
+        assertTaskReadyAndNoMoreToStart(c)
+        finishedExecuting(second)
+        assertAllWorkComplete()
+    }
+
     def "does not attempt to run finalizer of task whose dependencies have failed"() {
         given:
         Task broken = task("broken", type: Async, failure: new RuntimeException())
@@ -973,6 +1005,63 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
         !taskNode3.task.project.is(taskNode4.task.project)
     }
 
+    def "prefers a task from the project of the task the thread has just finished"() {
+        given:
+        def projectA = project(project, "a")
+        def projectB = project(project, "b")
+
+        def fooA = task("foo", project: projectA)
+        def barA = task("bar", project: projectA)
+
+        def fooB = task("foo", project: projectB)
+        def barB = task("bar", project: projectB)
+
+        when:
+        addToGraphAndPopulate(fooA, barA, fooB, barB)
+        def taskNode1 = selectNextTaskNode()
+        def taskNode2 = selectNextTaskNode()
+        finishedExecuting(taskNode1)
+        finishedExecuting(taskNode2)
+        def taskNode3 = selectNextTaskNode()
+
+        then:
+        taskNode3.task.project.is(taskNode2.task.project)
+        !taskNode3.task.is(taskNode2.task)
+    }
+
+    def "prefers the task with the longest remaining critical path over a task from the project the thread has just finished"() {
+        given:
+        def durationHistory = Stub(TaskDurationHistory) {
+            getDuration(":a:foo") >> 100L
+            getDuration(":a:bar") >> 10L
+            getDuration(":b:foo") >> 100L
+            getDuration(":b:bar") >> 5000L
+        }
+        def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
+        executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, new OrdinalGroupFactory(), dependencyResolver, accessHierarchies.outputHierarchy, accessHierarchies.destroyableHierarchy, coordinator, durationHistory)
+        def projectA = project(project, "a")
+        def projectB = project(project, "b")
+
+        def fooA = task("foo", project: projectA)
+        def barA = task("bar", project: projectA)
+
+        def fooB = task("foo", project: projectB)
+        def barB = task("bar", project: projectB)
+
+        when:
+        addToGraphAndPopulate(fooA, barA, fooB, barB)
+        def taskNode1 = selectNextTaskNode()
+        def taskNode2 = selectNextTaskNode()
+        finishedExecuting(taskNode1)
+        finishedExecuting(taskNode2)
+        def taskNode3 = selectNextTaskNode()
+
+        then:
+        taskNode1.task == barB
+        taskNode2.task == fooA
+        taskNode3.task == fooB
+    }
+
     def "a non-async task can start while an async task from the same project is waiting for work to complete"() {
         given:
         def bar = task("bar", type: Async)
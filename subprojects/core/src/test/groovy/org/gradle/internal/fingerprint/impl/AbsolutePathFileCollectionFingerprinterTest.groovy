@@ -20,6 +20,7 @@ import org.gradle.api.internal.file.TestFiles
 import org.gradle.internal.execution.history.changes.AbsolutePathFingerprintCompareStrategy
 import org.gradle.internal.execution.history.changes.ChangeTypeInternal
 import org.gradle.internal.execution.history.changes.DefaultFileChange
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
 import org.gradle.internal.fingerprint.DirectorySensitivity
 import org.gradle.internal.fingerprint.FileCollectionFingerprint
 import org.gradle.internal.fingerprint.hashing.FileSystemLocationSnapshotHasher
@@ -258,6 +259,28 @@ class AbsolutePathFileCollectionFingerprinterTest extends Specification {
         0 * listener._
     }
 
+    def "reuses previous fingerprint with known hash without looking at its file fingerprints"() {
+        TestFile file = tmpDir.createFile('file')
+        def fingerprint = fingerprinter.fingerprint(files(file))
+        def previous = Mock(FileCollectionFingerprint)
+        def archivedFingerprintFactory = Mock(CurrentFileCollectionFingerprint.ArchivedFileCollectionFingerprintFactory)
+
+        when:
+        def snapshot = fileCollectionSnapshotter.snapshot(files(file)).snapshot
+        def reused = fingerprinter.fingerprint(snapshot, previous)
+        def hash = reused.hash
+        def archived = reused.archive(archivedFingerprintFactory)
+
+        then:
+        _ * previous.wasCreatedWithStrategy(_) >> true
+        _ * previous.rootHashes >> fingerprint.rootHashes
+        _ * previous.knownHash >> fingerprint.hash
+        0 * previous.fingerprints
+        0 * archivedFingerprintFactory._
+        hash == fingerprint.hash
+        archived.is(previous)
+    }
+
     private static void changes(FileCollectionFingerprint previous, FileCollectionFingerprint current, ChangeListener<String> listener) {
         AbsolutePathFingerprintCompareStrategy.INSTANCE.visitChangesSince(previous, current, "TYPE") { DefaultFileChange change ->
             switch (change.type) {